@@ -0,0 +1,119 @@
+package com.perseus.raycaster.bench;
+
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import com.perseus.raycaster.Level;
+import com.perseus.raycaster.LevelLoader;
+import com.perseus.raycaster.Map;
+import com.perseus.raycaster.Texture;
+
+/*
+ * Levels and textures shared by the benchmarks. Everything is either read from
+ * the game jar or generated, so nothing here needs a display.
+ */
+public class BenchLevels {
+
+    // The level that ships with the game
+    public static Level bundledLevel() throws Exception {
+        try (InputStream in = LevelLoader.class.getResourceAsStream("/com/perseus/raycaster/LevelData.xml")) {
+            return LevelLoader.load(in);
+        }
+    }
+
+    // A size x size level in the LevelCreator's xml format with scattered walls and the start in the middle
+    public static String levelXml(int size, long seed) {
+        Random random = new Random(seed);
+        StringBuilder xml = new StringBuilder(size * size * 2 + 256);
+        xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?><level>");
+        xml.append("<gridSize>").append(size).append("</gridSize>");
+        xml.append("<playerAngle>0</playerAngle><mapData>");
+        for (int row = 0; row < size; row++) {
+            xml.append("<row>");
+            for (int col = 0; col < size; col++) {
+                int tile;
+                if (row == size / 2 && col == size / 2) {
+                    tile = 2;
+                } else if (row == size - 1 && col == size - 1) {
+                    tile = 3;
+                } else {
+                    tile = (random.nextInt(6) == 0) ? 1 : 0;
+                }
+                if (col > 0) {
+                    xml.append(' ');
+                }
+                xml.append(tile);
+            }
+            xml.append("</row>");
+        }
+        xml.append("</mapData></level>");
+        return xml.toString();
+    }
+
+    /*
+     * A size x size perfect maze (exactly one way between any two places),
+     * carved by a depth first walk with an explicit stack. Corridors are one
+     * tile wide, the start is in the top left corner and the goal in the
+     * right wall next to the bottom right corner.
+     */
+    public static Level maze(int size, long seed) {
+        Random random = new Random(seed);
+        int cells = (size - 1) / 2; // Cells along each side, at odd tile positions
+        byte[] tiles = new byte[size * size];
+        Arrays.fill(tiles, (byte) 1);
+        boolean[] visited = new boolean[cells * cells];
+        int[] stack = new int[cells * cells];
+        int depth = 0;
+        stack[depth++] = 0;
+        visited[0] = true;
+        int[] directions = new int[4];
+        while (depth > 0) {
+            int cell = stack[depth - 1];
+            int cellX = cell % cells;
+            int cellY = cell / cells;
+            int options = 0;
+            if (cellX > 0 && !visited[cell - 1]) {
+                directions[options++] = 0;
+            }
+            if (cellX < cells - 1 && !visited[cell + 1]) {
+                directions[options++] = 1;
+            }
+            if (cellY > 0 && !visited[cell - cells]) {
+                directions[options++] = 2;
+            }
+            if (cellY < cells - 1 && !visited[cell + cells]) {
+                directions[options++] = 3;
+            }
+            if (options == 0) {
+                depth--;
+                continue;
+            }
+            int direction = directions[random.nextInt(options)];
+            int stepX = (direction == 0) ? -1 : (direction == 1) ? 1 : 0;
+            int stepY = (direction == 2) ? -1 : (direction == 3) ? 1 : 0;
+            int next = cell + stepX + stepY * cells;
+            visited[next] = true;
+            int col = 2 * cellX + 1;
+            int row = 2 * cellY + 1;
+            tiles[(row + stepY) * size + col + stepX] = 0;
+            tiles[(row + 2 * stepY) * size + col + 2 * stepX] = 0;
+            stack[depth++] = next;
+        }
+        int last = 2 * (cells - 1) + 1;
+        tiles[last * size + last + 1] = 3;
+        tiles[size + 1] = 2;
+        return new Level(new Map(tiles, size, size), 1, 1, 0);
+    }
+
+    // A two color checkerboard standing in for the png textures
+    public static Texture checkerTexture(int size, int colorA, int colorB) {
+        int[] argb = new int[size * size];
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                argb[y * size + x] = (((x / 10) + (y / 10)) % 2 == 0) ? colorA : colorB;
+            }
+        }
+        return new Texture(argb, size, size);
+    }
+}
@@ -0,0 +1,90 @@
+package com.perseus.raycaster.bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.perseus.raycaster.FrameBuffer;
+import com.perseus.raycaster.Level;
+import com.perseus.raycaster.Map;
+import com.perseus.raycaster.Player;
+import com.perseus.raycaster.Renderer;
+import com.perseus.raycaster.Sprites;
+
+// One complete frame (sky, ground, walls and optionally sprites) of the bundled level at several window sizes
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FrameRenderBenchmark {
+
+    @Param({ "750x550", "1920x1080", "3840x2160" })
+    public String resolution;
+
+    // 0 uses every available core
+    @Param({ "1", "0" })
+    public int threads;
+
+    // Billboards scattered over the open tiles of the level
+    @Param({ "0", "500" })
+    public int sprites;
+
+    private Renderer renderer;
+    private FrameBuffer frame;
+    private Map map;
+    private Player player;
+
+    @Setup
+    public void setup() throws Exception {
+        String[] size = resolution.split("x");
+        frame = new FrameBuffer(Integer.parseInt(size[0]), Integer.parseInt(size[1]));
+
+        renderer = new Renderer((threads > 0) ? threads : Runtime.getRuntime().availableProcessors());
+        renderer.setWallTexture(BenchLevels.checkerTexture(100, 0xFF8A7A2A, 0xFF5C5220));
+        renderer.setGoalTexture(BenchLevels.checkerTexture(100, 0xFFB22222, 0xFF000000));
+
+        Level level = BenchLevels.bundledLevel();
+        map = level.getMap();
+        player = level.createPlayer();
+
+        if (sprites > 0) {
+            Sprites scattered = new Sprites();
+            Random random = new Random(1);
+            int tileSize = map.getTileSize();
+            while (scattered.getCount() < sprites) {
+                int col = random.nextInt(map.getWidth());
+                int row = random.nextInt(map.getHeight());
+                if (map.getTile(col, row) == 0) {
+                    scattered.add((col + random.nextDouble()) * tileSize, (row + random.nextDouble()) * tileSize,
+                            tileSize * 0.4, 0);
+                }
+            }
+            renderer.setSprites(scattered, BenchLevels.checkerTexture(64, 0xFFB22222, 0xFFFFFFFF));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        renderer.shutdown();
+    }
+
+    @Benchmark
+    public int[] renderFrame() {
+        renderer.render(map, player, frame);
+        return frame.getPixels();
+    }
+}
@@ -0,0 +1,50 @@
+package com.perseus.raycaster.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.perseus.raycaster.LevelGenerator;
+
+// Generating a whole level grid, a perfect maze or caves, with every region made in parallel
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = { "-Xmx2g" })
+public class LevelGeneratorBenchmark {
+
+    @Param({ "1024", "4096" })
+    public int size;
+
+    @Param({ "MAZE", "CAVE" })
+    public LevelGenerator.Style style;
+
+    private LevelGenerator generator;
+
+    @Setup
+    public void setup() {
+        generator = new LevelGenerator(style, size, 42, density());
+    }
+
+    // Perfect mazes, and caves at the density that gives caves
+    private double density() {
+        return (style == LevelGenerator.Style.MAZE) ? 1 : 0.45;
+    }
+
+    @Benchmark
+    public byte[] generate() {
+        return generator.generate();
+    }
+}
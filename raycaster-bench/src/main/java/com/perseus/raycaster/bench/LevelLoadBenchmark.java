@@ -0,0 +1,65 @@
+package com.perseus.raycaster.bench;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.perseus.raycaster.Level;
+import com.perseus.raycaster.LevelFile;
+import com.perseus.raycaster.LevelLoader;
+
+// Loading a level file of the given grid size from disk, as xml or as a memory-mapped binary file
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LevelLoadBenchmark {
+
+    @Param({ "19", "50", "200", "1000" })
+    public int gridSize;
+
+    @Param({ "xml", "lvl" })
+    public String format;
+
+    private File file;
+
+    @Setup
+    public void setup() throws Exception {
+        File xml = File.createTempFile("level-" + gridSize + "-", ".xml");
+        Files.writeString(xml.toPath(), BenchLevels.levelXml(gridSize, 42), StandardCharsets.UTF_8);
+
+        if (format.equals("lvl")) {
+            file = File.createTempFile("level-" + gridSize + "-", LevelFile.EXTENSION);
+            LevelFile.write(file.toPath(), LevelLoader.load(xml));
+            xml.delete();
+        } else {
+            file = xml;
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Benchmark
+    public Level loadLevel() throws Exception {
+        return LevelLoader.load(file);
+    }
+}
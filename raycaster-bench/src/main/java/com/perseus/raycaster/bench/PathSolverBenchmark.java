@@ -0,0 +1,46 @@
+package com.perseus.raycaster.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.perseus.raycaster.Level;
+import com.perseus.raycaster.PathSolver;
+
+// The par distance of a generated maze, start corner to goal corner
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = { "-Xmx2g" })
+public class PathSolverBenchmark {
+
+    @Param({ "1024", "4096" })
+    public int size;
+
+    private Level level;
+
+    @Setup
+    public void setup() {
+        level = BenchLevels.maze(size, 42);
+        if (PathSolver.shortestDistance(level) < 0) {
+            throw new IllegalStateException("The maze has no way to its goal");
+        }
+    }
+
+    @Benchmark
+    public double solveMaze() {
+        return PathSolver.shortestDistance(level);
+    }
+}
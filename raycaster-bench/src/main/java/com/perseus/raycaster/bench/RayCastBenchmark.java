@@ -0,0 +1,65 @@
+package com.perseus.raycaster.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.perseus.raycaster.Level;
+import com.perseus.raycaster.Map;
+import com.perseus.raycaster.Player;
+import com.perseus.raycaster.Ray;
+
+// A full turn of rays from the start of the bundled level
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RayCastBenchmark {
+    private static final int RAYS = 360;
+
+    @Param({ "DDA", "MARCH" })
+    public Ray.CastMode castMode;
+
+    private Map map;
+    private Player player;
+    private double[] dirX;
+    private double[] dirY;
+
+    @Setup
+    public void setup() throws Exception {
+        Level level = BenchLevels.bundledLevel();
+        map = level.getMap();
+        player = level.createPlayer();
+
+        dirX = new double[RAYS];
+        dirY = new double[RAYS];
+        for (int i = 0; i < RAYS; i++) {
+            double angle = Math.toRadians(i + 0.5);
+            dirX[i] = Math.cos(angle);
+            dirY[i] = Math.sin(angle);
+        }
+    }
+
+    @Benchmark
+    public void castFullTurn(Blackhole blackhole) {
+        Ray ray = new Ray(1, 0);
+        for (int i = 0; i < RAYS; i++) {
+            ray.setDirection(dirX[i], dirY[i]);
+            ray.cast(map, player, castMode);
+            blackhole.consume(ray.getDistance());
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.perseus.raycaster.bench;
+
+import java.io.File;
+import java.nio.file.Paths;
+
+import com.perseus.raycaster.FrameBuffer;
+import com.perseus.raycaster.FrameStats;
+import com.perseus.raycaster.InputRecording;
+import com.perseus.raycaster.Level;
+import com.perseus.raycaster.LevelLoader;
+import com.perseus.raycaster.Map;
+import com.perseus.raycaster.Player;
+import com.perseus.raycaster.Raycaster;
+import com.perseus.raycaster.Renderer;
+
+/*
+ * Replays a recorded play session (see InputRecording) without a window, as
+ * fast as possible: every tick is simulated exactly as in the game and then
+ * rendered as one frame. Reports the frame rate and the p50/p95/p99/max time
+ * of every phase of the frame, and checks that the session ends exactly as it
+ * did when it was recorded, so the numbers are known to come from the same
+ * path through the level.
+ *
+ *   java -cp target/benchmarks.jar com.perseus.raycaster.bench.ReplayBenchmark session.rec [level file]
+ *
+ * Without a level file the level that ships with the game is used. Options:
+ *   -Dreplay.resolution=WIDTHxHEIGHT  frame size (default 750x550, the game window)
+ *   -Dreplay.threads=n                render workers, 0 for every core (default)
+ *   -Dreplay.passes=n                 times the session is replayed, only the last one is reported (default 3,
+ *                                     the earlier ones warm up the JIT)
+ *   -Dreplay.csv=file                 per-frame timings of the reported pass
+ *
+ * Exits with status 1 if the replay doesn't end where the recording did.
+ */
+public class ReplayBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: ReplayBenchmark <recording" + InputRecording.EXTENSION + "> [level file]");
+            System.exit(2);
+        }
+
+        InputRecording recording = InputRecording.read(Paths.get(args[0]));
+        Level level = (args.length > 1) ? LevelLoader.load(new File(args[1])) : BenchLevels.bundledLevel();
+        if (!recording.matches(level)) {
+            System.err.println("The recording was made on a different level");
+            System.exit(2);
+        }
+
+        String[] size = System.getProperty("replay.resolution", "750x550").split("x");
+        FrameBuffer frame = new FrameBuffer(Integer.parseInt(size[0]), Integer.parseInt(size[1]));
+        int threads = Integer.getInteger("replay.threads", 0);
+        int passes = Math.max(1, Integer.getInteger("replay.passes", 3));
+
+        Renderer renderer = new Renderer((threads > 0) ? threads : Runtime.getRuntime().availableProcessors());
+        renderer.setWallTexture(BenchLevels.checkerTexture(100, 0xFF8A7A2A, 0xFF5C5220));
+        renderer.setGoalTexture(BenchLevels.checkerTexture(100, 0xFFB22222, 0xFF000000));
+        renderer.setFloorTextures(BenchLevels.checkerTexture(100, 0xFF717171, 0xFF5A5A5A),
+                BenchLevels.checkerTexture(100, 0xFF393939, 0xFF2E2E2E)); // The game draws textured floors by default
+        FrameStats stats = new FrameStats(Math.max(1, recording.getTickCount()));
+        renderer.setFrameStats(stats);
+
+        try {
+            Player player = null;
+            int completionTick = -1;
+            long elapsed = 0;
+            for (int pass = 0; pass < passes; pass++) {
+                stats.reset();
+                player = level.createPlayer();
+                long start = System.nanoTime();
+                completionTick = replay(recording, level.getMap(), player, renderer, frame, stats);
+                elapsed = System.nanoTime() - start;
+            }
+
+            report(recording, stats, elapsed, frame);
+            String csv = System.getProperty("replay.csv");
+            if (csv != null) {
+                stats.writeCsv(Paths.get(csv));
+            }
+
+            boolean matches = player.getX() == recording.getFinalX() && player.getY() == recording.getFinalY()
+                    && player.getAngle() == recording.getFinalAngle()
+                    && completionTick == recording.getCompletionTick();
+            String ending = (completionTick < 0) ? "goal not reached"
+                    : String.format("goal reached after %.3f s", completionTick / (double) Raycaster.TICK_RATE);
+            System.out.printf("final state   x %.3f y %.3f angle %.6f, %s%n", player.getX(), player.getY(),
+                    player.getAngle(), ending);
+            if (!matches) {
+                System.out.printf("MISMATCH      recorded x %.3f y %.3f angle %.6f, completion tick %d (replayed %d)%n",
+                        recording.getFinalX(), recording.getFinalY(), recording.getFinalAngle(),
+                        recording.getCompletionTick(), completionTick);
+                System.exit(1);
+            }
+            System.out.println("final state matches the recording");
+        } finally {
+            renderer.shutdown();
+        }
+    }
+
+    // Simulate and render every recorded tick, returns the tick the goal was reached on or -1
+    private static int replay(InputRecording recording, Map map, Player player, Renderer renderer,
+            FrameBuffer frame, FrameStats stats) {
+        for (int tick = 0; tick < recording.getTickCount(); tick++) {
+            long frameStart = System.nanoTime();
+            player.beginTick();
+            player.update(map, recording.getInput(tick));
+            stats.add(FrameStats.Phase.SIMULATE, System.nanoTime() - frameStart);
+
+            renderer.render(map, player, frame);
+            long frameEnd = System.nanoTime();
+            stats.add(FrameStats.Phase.FRAME, frameEnd - frameStart);
+            stats.endFrame(frameEnd);
+
+            if (player.hasReachedGoal()) {
+                return tick + 1; // The game counts the tick the goal is reached on
+            }
+        }
+        return -1;
+    }
+
+    private static void report(InputRecording recording, FrameStats stats, long elapsed, FrameBuffer frame) {
+        System.out.printf("replayed      %d ticks (%.1f s of play) at %dx%d in %.3f s%n", stats.getFrameCount(),
+                recording.getTickCount() / (double) Raycaster.TICK_RATE, frame.getWidth(), frame.getHeight(),
+                elapsed / 1e9);
+        System.out.printf("frame rate    %.1f fps%n", stats.getFrameCount() * 1e9 / Math.max(1, elapsed));
+        System.out.printf("%-13s %8s %8s %8s %8s%n", "ms", "p50", "p95", "p99", "max");
+        for (FrameStats.Phase phase : FrameStats.Phase.values()) {
+            System.out.printf("%-13s %8.3f %8.3f %8.3f %8.3f%n", phase.getLabel(), stats.percentile(phase, 50) / 1e6,
+                    stats.percentile(phase, 95) / 1e6, stats.percentile(phase, 99) / 1e6,
+                    stats.percentile(phase, 100) / 1e6);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.perseus.raycaster;
+
+/*
+ * Per-column lookup tables for the view. Every screen column looks a fixed
+ * angle away from the player's facing direction, so the sine and cosine of
+ * that offset (the cosine doubles as the fisheye correction) only change when
+ * the window width or the field of view changes, not every frame.
+ */
+public class Camera {
+    private int width;
+    private double fov; // Field of view in radians
+
+    private double[] offsetCos;
+    private double[] offsetSin;
+    private double[] offsetTan; // How far sideways a column looks per unit of forward distance
+
+    public Camera(int width, double fovDegrees) {
+        this.width = Math.max(width, 1);
+        this.fov = Math.toRadians(fovDegrees);
+        rebuild();
+    }
+
+    // Only rebuilds the tables when the width actually changed
+    public void resize(int width) {
+        width = Math.max(width, 1);
+        if (width != this.width) {
+            this.width = width;
+            rebuild();
+        }
+    }
+
+    public void setFieldOfView(double fovDegrees) {
+        double fov = Math.toRadians(fovDegrees);
+        if (fov != this.fov) {
+            this.fov = fov;
+            rebuild();
+        }
+    }
+
+    private void rebuild() {
+        offsetCos = new double[width];
+        offsetSin = new double[width];
+        offsetTan = new double[width];
+
+        double step = fov / width;
+        for (int x = 0; x < width; x++) {
+            double offset = -fov / 2 + x * step; // Angle of this column relative to the view direction
+            offsetCos[x] = Math.cos(offset);
+            offsetSin[x] = Math.sin(offset);
+            offsetTan[x] = Math.tan(offset);
+        }
+    }
+
+    // Direction of the ray through screen column x, given the cosine and sine of the view angle
+    public double getRayDirX(int x, double viewCos, double viewSin) {
+        return viewCos * offsetCos[x] - viewSin * offsetSin[x];
+    }
+
+    public double getRayDirY(int x, double viewCos, double viewSin) {
+        return viewSin * offsetCos[x] + viewCos * offsetSin[x];
+    }
+
+    // Multiply a ray's length by this to get the perpendicular (fisheye free) distance
+    public double getCorrection(int x) {
+        return offsetCos[x];
+    }
+
+    /*
+     * The point that column x sees at perpendicular distance d is d units
+     * ahead of the player plus d * getOffsetTan(x) units to the side (towards
+     * the direction (-viewSin, viewCos)). Used by the floor and ceiling pass.
+     */
+    public double getOffsetTan(int x) {
+        return offsetTan[x];
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public double getFieldOfView() {
+        return Math.toDegrees(fov);
+    }
+}
@@ -0,0 +1,308 @@
+package com.perseus.raycaster;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingDeque;
+
+/*
+ * A Map whose tiles stay in the level file and are read in 64 x 64 tile
+ * chunks as they are needed, for worlds far bigger than the heap (or than
+ * the 2 GB a single memory mapping can cover).
+ *
+ * At most a fixed number of chunks is kept; when a new one is loaded past
+ * that, the one used least recently goes. "Recently" is counted in ticks
+ * (see prefetch), which is all the precision eviction needs and keeps the
+ * tile lookups free of any bookkeeping beyond a field write per tick.
+ *
+ * Lookups never wait for the disk. A tile in a chunk that isn't loaded reads
+ * as wall, so rays stop and the player is blocked there, and the chunk is
+ * queued for the loader thread. To keep that from being seen, every tick the
+ * chunks around the player and ahead of it along its view are queued too.
+ * Chunks missed by a lookup go to the front of the queue, prefetched ones to
+ * the back.
+ *
+ * Every chunk has its own distance field (see DistanceField), built when it
+ * is loaded, with the chunk's edges counting as walls. That can only make
+ * the clearance smaller than the true one, so empty space skipping in Ray
+ * stays exact across chunk borders.
+ */
+public class ChunkedMap extends Map {
+    private static final int CHUNK_SHIFT = 6;
+    private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT; // Tiles along each side of a chunk
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    private static final int RECENT_SLOTS = 256; // Lookup shortcut, see chunk()
+    private static final int PREFETCH_AHEAD = 4; // Chunks fetched ahead of the player
+    private static final double PREFETCH_SPREAD = Math.toRadians(Renderer.FOV / 2.0); // Edges of the view
+
+    // One loaded chunk. Never changed after loading, so readers on any thread can share it
+    private static final class Chunk {
+        final int chunkX;
+        final int chunkY;
+        final byte[] tiles;
+        final byte[] clearance;
+        long lastUsed; // Tick the chunk was last read in, written without locking (only guides eviction)
+
+        Chunk(int chunkX, int chunkY, byte[] tiles, byte[] clearance) {
+            this.chunkX = chunkX;
+            this.chunkY = chunkY;
+            this.tiles = tiles;
+            this.clearance = clearance;
+        }
+    }
+
+    private final FileChannel channel;
+    private final long tilesOffset; // Where the row-major tiles start in the file
+    private final int chunksX;
+    private final int chunksY;
+    private final int capacity; // Chunks kept at most
+
+    private final ConcurrentHashMap<Long, Chunk> resident = new ConcurrentHashMap<>();
+    // Chunks found recently, indexed by a hash of their position. Checked before the hash map
+    // because nearly every lookup hits the same few chunks as the one before it
+    private final Chunk[] recent = new Chunk[RECENT_SLOTS];
+
+    private final LinkedBlockingDeque<Long> queue = new LinkedBlockingDeque<>();
+    private final Set<Long> queued = ConcurrentHashMap.newKeySet();
+    private final Thread loader;
+    private volatile boolean closed;
+    private long clock; // Ticks seen by prefetch
+
+    /*
+     * Read the tiles of a width x height level starting at tilesOffset in the
+     * file. Keeps at most capacity chunks of CHUNK_SIZE x CHUNK_SIZE tiles
+     * (two bytes per tile with the distance field).
+     */
+    public ChunkedMap(Path path, long tilesOffset, int width, int height, int tileSize, int capacity)
+            throws IOException {
+        super(width, height, tileSize);
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.tilesOffset = tilesOffset;
+        this.chunksX = (width + CHUNK_MASK) >> CHUNK_SHIFT;
+        this.chunksY = (height + CHUNK_MASK) >> CHUNK_SHIFT;
+        this.capacity = Math.max(16, capacity);
+
+        loader = new Thread(this::loadQueued, "chunk-loader");
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    @Override
+    public int getTile(int x, int y) {
+        if (x < 0 || y < 0 || x >= getWidth() || y >= getHeight()) {
+            return -1;
+        }
+        Chunk chunk = chunk(x >> CHUNK_SHIFT, y >> CHUNK_SHIFT);
+        if (chunk == null) {
+            return 1; // Not loaded yet
+        }
+        return chunk.tiles[((y & CHUNK_MASK) << CHUNK_SHIFT) | (x & CHUNK_MASK)];
+    }
+
+    @Override
+    public boolean isWall(int x, int y) {
+        int col = toTile(x);
+        int row = toTile(y);
+        if (col < 0 || col >= getWidth() || row < 0 || row >= getHeight()) {
+            return false;
+        }
+        return (getTile(col, row) & 1) != 0;
+    }
+
+    @Override
+    public int getClearance(int x, int y) {
+        if (x < 0 || y < 0 || x >= getWidth() || y >= getHeight()) {
+            return 0;
+        }
+        Chunk chunk = chunk(x >> CHUNK_SHIFT, y >> CHUNK_SHIFT);
+        if (chunk == null) {
+            return 0;
+        }
+        return chunk.clearance[((y & CHUNK_MASK) << CHUNK_SHIFT) | (x & CHUNK_MASK)] & 0xFF;
+    }
+
+    // The chunk if it is loaded, otherwise null after queueing it
+    private Chunk chunk(int chunkX, int chunkY) {
+        int slot = (chunkX * 31 + chunkY) & (RECENT_SLOTS - 1);
+        Chunk chunk = recent[slot];
+        if (chunk == null || chunk.chunkX != chunkX || chunk.chunkY != chunkY) {
+            chunk = resident.get(key(chunkX, chunkY));
+            if (chunk == null) {
+                request(chunkX, chunkY, true);
+                return null;
+            }
+            // Written without locking: everything a lookup reads from a Chunk is final, so a
+            // thread that finds it here sees it whole. An evicted chunk can end up back in a
+            // slot this way; it still holds the right tiles and is simply dropped when the
+            // slot is taken by another chunk
+            recent[slot] = chunk;
+        }
+        if (chunk.lastUsed != clock) {
+            chunk.lastUsed = clock;
+        }
+        return chunk;
+    }
+
+    private static long key(int chunkX, int chunkY) {
+        return ((long) chunkY << 32) | (chunkX & 0xFFFFFFFFL);
+    }
+
+    // Queue a chunk for the loader unless it is already loaded or queued
+    private void request(int chunkX, int chunkY, boolean urgent) {
+        if (chunkX < 0 || chunkY < 0 || chunkX >= chunksX || chunkY >= chunksY) {
+            return;
+        }
+        Long key = key(chunkX, chunkY);
+        if (resident.containsKey(key) || !queued.add(key)) {
+            return;
+        }
+        if (urgent) {
+            queue.offerFirst(key);
+        } else {
+            queue.offerLast(key);
+        }
+    }
+
+    /*
+     * Queue the chunks around the player and the ones ahead of it, straight
+     * ahead and along both edges of the view. Also advances the clock the
+     * least recently used chunk is found by.
+     */
+    @Override
+    public void prefetch(double x, double y, double dirX, double dirY) {
+        clock++;
+        double chunkWorldSize = (double) CHUNK_SIZE * getTileSize();
+        int chunkX = (int) Math.floor(x / chunkWorldSize);
+        int chunkY = (int) Math.floor(y / chunkWorldSize);
+        for (int dy = -1; dy <= 1; dy++) {
+            for (int dx = -1; dx <= 1; dx++) {
+                request(chunkX + dx, chunkY + dy, false);
+            }
+        }
+
+        double cos = Math.cos(PREFETCH_SPREAD);
+        double sin = Math.sin(PREFETCH_SPREAD);
+        for (int ahead = 1; ahead <= PREFETCH_AHEAD; ahead++) {
+            double reach = ahead * chunkWorldSize;
+            prefetchAt(x + dirX * reach, y + dirY * reach, chunkWorldSize);
+            prefetchAt(x + (dirX * cos - dirY * sin) * reach, y + (dirX * sin + dirY * cos) * reach, chunkWorldSize);
+            prefetchAt(x + (dirX * cos + dirY * sin) * reach, y + (dirY * cos - dirX * sin) * reach, chunkWorldSize);
+        }
+    }
+
+    private void prefetchAt(double x, double y, double chunkWorldSize) {
+        request((int) Math.floor(x / chunkWorldSize), (int) Math.floor(y / chunkWorldSize), false);
+    }
+
+    // Load the chunks around a tile before returning, so the first frame isn't all unloaded walls
+    public void loadAround(int col, int row, int radius) throws IOException {
+        int chunkX = col >> CHUNK_SHIFT;
+        int chunkY = row >> CHUNK_SHIFT;
+        for (int dy = -radius; dy <= radius; dy++) {
+            for (int dx = -radius; dx <= radius; dx++) {
+                int x = chunkX + dx;
+                int y = chunkY + dy;
+                if (x >= 0 && y >= 0 && x < chunksX && y < chunksY
+                        && !resident.containsKey(key(x, y))) {
+                    store(load(x, y));
+                }
+            }
+        }
+    }
+
+    // Loader thread: load queued chunks one at a time until the map is closed
+    private void loadQueued() {
+        while (!closed) {
+            Long key;
+            try {
+                key = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            try {
+                int chunkX = (int) (long) key;
+                int chunkY = (int) (key >> 32);
+                if (!resident.containsKey(key)) {
+                    store(load(chunkX, chunkY));
+                }
+            } catch (IOException e) {
+                if (!closed) {
+                    e.printStackTrace();
+                }
+            } finally {
+                queued.remove(key);
+            }
+        }
+    }
+
+    // Read a chunk's rows out of the file. Tiles past the edge of the map are filled with walls
+    private Chunk load(int chunkX, int chunkY) throws IOException {
+        byte[] tiles = new byte[CHUNK_SIZE * CHUNK_SIZE];
+        int firstCol = chunkX << CHUNK_SHIFT;
+        int firstRow = chunkY << CHUNK_SHIFT;
+        int cols = Math.min(CHUNK_SIZE, getWidth() - firstCol);
+        int rows = Math.min(CHUNK_SIZE, getHeight() - firstRow);
+        Arrays.fill(tiles, (byte) 1);
+
+        for (int row = 0; row < rows; row++) {
+            ByteBuffer line = ByteBuffer.wrap(tiles, row << CHUNK_SHIFT, cols);
+            long position = tilesOffset + (long) (firstRow + row) * getWidth() + firstCol;
+            while (line.hasRemaining()) {
+                int read = channel.read(line, position);
+                if (read < 0) {
+                    throw new IOException("Level file ends inside chunk " + chunkX + "," + chunkY);
+                }
+                position += read;
+            }
+        }
+        Chunk chunk = new Chunk(chunkX, chunkY, tiles, DistanceField.build(ByteBuffer.wrap(tiles), CHUNK_SIZE,
+                CHUNK_SIZE));
+        chunk.lastUsed = clock;
+        return chunk;
+    }
+
+    // Make a loaded chunk visible, first evicting the least recently used ones if the cache is full
+    private synchronized void store(Chunk chunk) {
+        while (resident.size() >= capacity) {
+            Chunk oldest = null;
+            for (Chunk candidate : resident.values()) {
+                if (oldest == null || candidate.lastUsed < oldest.lastUsed) {
+                    oldest = candidate;
+                }
+            }
+            resident.remove(key(oldest.chunkX, oldest.chunkY));
+            int slot = (oldest.chunkX * 31 + oldest.chunkY) & (RECENT_SLOTS - 1);
+            if (recent[slot] == oldest) {
+                recent[slot] = null;
+            }
+        }
+        resident.put(key(chunk.chunkX, chunk.chunkY), chunk);
+    }
+
+    // The tiles are read from the file as they are needed, there is no copy to change
+    @Override
+    public boolean canChangeTiles() {
+        return false;
+    }
+
+    // Chunks currently loaded
+    public int getResidentChunks() {
+        return resident.size();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        loader.interrupt();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package com.perseus.raycaster;
+
+import java.nio.ByteBuffer;
+import java.util.stream.IntStream;
+
+/*
+ * For every tile, how far it is (in tiles) to the nearest tile a ray stops at
+ * (walls and goals, and the outside of the map), measured as the Chebyshev
+ * distance max(|dx|, |dy|). A tile with clearance d is the center of a
+ * (2d - 1) x (2d - 1) square of open tiles, so a ray inside that tile can
+ * cross the whole square without looking at any of them (see Ray).
+ *
+ * Values are capped at 255 so they fit in one byte per tile. The transform is
+ * the separable linear-time one from Meijster et al.: first the distance
+ * along every row, then a pass down every column that combines the rows. Both
+ * passes work on independent rows / columns, so big maps are split across
+ * cores.
+ */
+public class DistanceField {
+    public static final int MAX_CLEARANCE = 255;
+
+    private static final int PARALLEL_THRESHOLD = 256 * 256; // Tiles below which threads don't pay off
+    private static final int COLUMN_BLOCK = 64; // Columns copied out together, so rows are read in runs
+
+    // Build the field for a width x height map whose tiles are read from index 0 of the buffer
+    public static byte[] build(ByteBuffer tiles, int width, int height) {
+        byte[] field = new byte[width * height];
+        boolean parallel = (long) width * height >= PARALLEL_THRESHOLD;
+        int chunks = parallel ? Runtime.getRuntime().availableProcessors() * 4 : 1;
+
+        // Rows: distance to the nearest stopping tile in the same row
+        forEachChunk(height, chunks, (from, to) -> {
+            for (int row = from; row < to; row++) {
+                rowDistances(tiles, field, width, row);
+            }
+        });
+
+        // Columns: combine the row distances into the Chebyshev distance. Walking down a
+        // column of a row-major array jumps a whole row per tile, so a block of columns is
+        // copied out row by row first and written back the same way
+        forEachChunk(width, chunks, (from, to) -> {
+            int block = Math.min(COLUMN_BLOCK, to - from);
+            int[] g = new int[block * height]; // Scratch, reused for every block of the chunk
+            int[] dist = new int[block * height];
+            int[] s = new int[height];
+            int[] t = new int[height];
+            for (int first = from; first < to; first += block) {
+                int count = Math.min(block, to - first);
+                for (int row = 0; row < height; row++) {
+                    int offset = row * width + first;
+                    for (int c = 0; c < count; c++) {
+                        g[c * height + row] = field[offset + c] & 0xFF;
+                    }
+                }
+                for (int c = 0; c < count; c++) {
+                    columnDistances(g, dist, c * height, height, s, t);
+                }
+                for (int row = 0; row < height; row++) {
+                    int offset = row * width + first;
+                    for (int c = 0; c < count; c++) {
+                        field[offset + c] = (byte) dist[c * height + row];
+                    }
+                }
+            }
+        });
+        return field;
+    }
+
+    /*
+     * Bring a field up to date after the tiles inside the box (minX, minY) -
+     * (maxX, maxY) changed. Only tiles less than MAX_CLEARANCE away from the
+     * box can have a different clearance, and for those only tiles less than
+     * MAX_CLEARANCE further out matter, so the field is rebuilt for that
+     * window alone. Where the window stops short of the map's edge it is
+     * treated as a wall, but that is far enough from the updated tiles for it
+     * to only ever give the cap.
+     */
+    public static void update(ByteBuffer tiles, int width, int height, byte[] field, int minX, int minY, int maxX,
+            int maxY) {
+        int innerMinX = Math.max(0, minX - MAX_CLEARANCE);
+        int innerMinY = Math.max(0, minY - MAX_CLEARANCE);
+        int innerMaxX = Math.min(width - 1, maxX + MAX_CLEARANCE);
+        int innerMaxY = Math.min(height - 1, maxY + MAX_CLEARANCE);
+        int outerMinX = Math.max(0, innerMinX - MAX_CLEARANCE);
+        int outerMinY = Math.max(0, innerMinY - MAX_CLEARANCE);
+        int outerWidth = Math.min(width - 1, innerMaxX + MAX_CLEARANCE) - outerMinX + 1;
+        int outerHeight = Math.min(height - 1, innerMaxY + MAX_CLEARANCE) - outerMinY + 1;
+
+        if (outerWidth == width && outerHeight == height) {
+            System.arraycopy(build(tiles, width, height), 0, field, 0, field.length);
+            return;
+        }
+
+        byte[] window = new byte[outerWidth * outerHeight];
+        for (int row = 0; row < outerHeight; row++) {
+            int offset = (outerMinY + row) * width + outerMinX;
+            for (int col = 0; col < outerWidth; col++) {
+                window[row * outerWidth + col] = tiles.get(offset + col);
+            }
+        }
+        byte[] windowField = build(ByteBuffer.wrap(window), outerWidth, outerHeight);
+        for (int y = innerMinY; y <= innerMaxY; y++) {
+            System.arraycopy(windowField, (y - outerMinY) * outerWidth + (innerMinX - outerMinX), field,
+                    y * width + innerMinX, innerMaxX - innerMinX + 1);
+        }
+    }
+
+    private interface Range {
+        void run(int from, int to);
+    }
+
+    // Split [0, count) into about chunks pieces and run them, in parallel if more than one
+    private static void forEachChunk(int count, int chunks, Range range) {
+        int size = Math.max(1, (count + chunks - 1) / chunks);
+        int pieces = (count + size - 1) / size;
+        if (pieces <= 1) {
+            range.run(0, count);
+            return;
+        }
+        IntStream.range(0, pieces).parallel().forEach(piece -> {
+            int from = piece * size;
+            range.run(from, Math.min(count, from + size));
+        });
+    }
+
+    private static boolean stopsRays(int tile) {
+        return (tile & 1) != 0; // Walls (1) and goals (3)
+    }
+
+    // Two sweeps along the row; the outside of the map counts as stopping on both ends
+    private static void rowDistances(ByteBuffer tiles, byte[] field, int width, int row) {
+        int offset = row * width;
+        int distance = 0; // Left of the map
+        for (int col = 0; col < width; col++) {
+            distance = stopsRays(tiles.get(offset + col)) ? 0 : Math.min(distance + 1, MAX_CLEARANCE);
+            field[offset + col] = (byte) distance;
+        }
+        distance = 0; // Right of the map
+        for (int col = width - 1; col >= 0; col--) {
+            distance = Math.min(distance + 1, field[offset + col] & 0xFF);
+            field[offset + col] = (byte) distance;
+        }
+    }
+
+    /*
+     * dist(y) = min over rows i of max(|y - i|, g(i)), where g is the row
+     * distance. The lower envelope of those functions is built top to bottom
+     * (s: rows whose function is part of it, t: where each one takes over)
+     * and then read back bottom to top. The column is g[base .. base + height)
+     * and the result goes to the same range of dist.
+     */
+    private static void columnDistances(int[] g, int[] dist, int base, int height, int[] s, int[] t) {
+        int q = 0;
+        s[0] = 0;
+        t[0] = 0;
+        for (int u = 1; u < height; u++) {
+            while (q >= 0 && f(t[q], s[q], g, base) > f(t[q], u, g, base)) {
+                q--;
+            }
+            if (q < 0) {
+                q = 0;
+                s[0] = u;
+            } else {
+                int w = 1 + separation(s[q], u, g, base);
+                if (w < height) {
+                    q++;
+                    s[q] = u;
+                    t[q] = w;
+                }
+            }
+        }
+
+        for (int u = height - 1; u >= 0; u--) {
+            // The rows just outside the map stop rays too
+            int distance = Math.min(f(u, s[q], g, base), Math.min(u + 1, height - u));
+            dist[base + u] = Math.min(distance, MAX_CLEARANCE);
+            if (u == t[q]) {
+                q--;
+            }
+        }
+    }
+
+    private static int f(int y, int i, int[] g, int base) {
+        return Math.max(Math.abs(y - i), g[base + i]);
+    }
+
+    // First row from which row u's function is below row i's (i < u), minus one
+    private static int separation(int i, int u, int[] g, int base) {
+        int gi = g[base + i];
+        int gu = g[base + u];
+        if (gi <= gu) {
+            return Math.max(i + gu, (i + u) >>> 1);
+        }
+        return Math.min(u - gi, (i + u) >>> 1);
+    }
+}
@@ -0,0 +1,54 @@
+package com.perseus.raycaster;
+
+import java.util.Arrays;
+
+/*
+ * An off-screen render target backed by a plain ARGB int array (row-major,
+ * one int per pixel). Everything for a frame is written in here first and the
+ * finished frame is handed to JavaFX in one go.
+ */
+public class FrameBuffer {
+    private final int width;
+    private final int height;
+    private final int[] pixels;
+
+    public FrameBuffer(int width, int height) {
+        this.width = Math.max(width, 1);
+        this.height = Math.max(height, 1);
+        this.pixels = new int[this.width * this.height];
+    }
+
+    // Fill whole rows [fromRow, toRow) with one color
+    public void fillRows(int fromRow, int toRow, int argb) {
+        fromRow = Math.max(fromRow, 0);
+        toRow = Math.min(toRow, height);
+        if (fromRow < toRow) {
+            Arrays.fill(pixels, fromRow * width, toRow * width, argb);
+        }
+    }
+
+    // Fill a horizontal run of pixels, clipped to the buffer
+    public void fillSpan(int x, int y, int length, int argb) {
+        if (y < 0 || y >= height) {
+            return;
+        }
+        int from = Math.max(x, 0);
+        int to = Math.min(x + length, width);
+        if (from < to) {
+            int row = y * width;
+            Arrays.fill(pixels, row + from, row + to, argb);
+        }
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int[] getPixels() {
+        return pixels;
+    }
+}
@@ -0,0 +1,138 @@
+package com.perseus.raycaster;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*
+ * Timings of the most recent frames, split into the phases of the frame.
+ *
+ * Phase times are added up for the frame in progress and copied into a ring
+ * buffer of fixed size when the frame ends, so recording never allocates.
+ * Cast and shade are recorded by the render workers themselves and added up
+ * over all of them, so with parallel rendering they are CPU time and can be
+ * larger than the frame itself.
+ */
+public class FrameStats {
+
+    public enum Phase {
+        SIMULATE("sim"), // Fixed ticks run before the frame
+        FILL("fill"), // Sky and ground
+        CAST("cast"), // Finding the walls the rays hit
+        SHADE("shade"), // Texture sampling into the frame buffer
+        FLOOR("floor"), // Textured floor and ceiling
+        SPRITES("sprites"), // Billboards
+        PRESENT("present"), // Handing the frame to JavaFX and drawing it on the canvas
+        FRAME("frame"); // The whole frame
+
+        private final String label;
+
+        Phase(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    private static final Phase[] PHASES = Phase.values();
+
+    private final int capacity;
+    private final long[] samples; // capacity frames of one nanosecond value per phase
+    private final long[] frameTimes; // When each frame ended, for the frame rate
+    private final AtomicLongArray current = new AtomicLongArray(PHASES.length); // Frame in progress
+    private int next; // Ring position the next frame is written to
+    private int count; // Frames in the ring
+    private long framesRecorded; // Frames since the last reset, used to number the csv rows
+
+    private final long[] sortScratch; // Reused by percentile()
+
+    public FrameStats(int capacity) {
+        this.capacity = capacity;
+        this.samples = new long[capacity * PHASES.length];
+        this.frameTimes = new long[capacity];
+        this.sortScratch = new long[capacity];
+    }
+
+    // Add time to a phase of the frame in progress. Safe to call from the render workers
+    public void add(Phase phase, long nanos) {
+        current.addAndGet(phase.ordinal(), nanos);
+    }
+
+    // Close the frame in progress, now being the System.nanoTime() it ended at
+    public void endFrame(long now) {
+        int offset = next * PHASES.length;
+        for (int phase = 0; phase < PHASES.length; phase++) {
+            samples[offset + phase] = current.getAndSet(phase, 0);
+        }
+        frameTimes[next] = now;
+        next = (next + 1) % capacity;
+        count = Math.min(count + 1, capacity);
+        framesRecorded++;
+    }
+
+    // Forget all frames, for example when a level is restarted
+    public void reset() {
+        for (int phase = 0; phase < PHASES.length; phase++) {
+            current.set(phase, 0);
+        }
+        next = 0;
+        count = 0;
+        framesRecorded = 0;
+    }
+
+    public int getFrameCount() {
+        return count;
+    }
+
+    // Frames per second over the frames in the ring
+    public double getFps() {
+        if (count < 2) {
+            return 0;
+        }
+        long newest = frameTimes[(next - 1 + capacity) % capacity];
+        long oldest = frameTimes[(next - count + capacity) % capacity];
+        return (count - 1) * 1e9 / Math.max(1, newest - oldest);
+    }
+
+    // The given percentile (0-100) of a phase over the frames in the ring, in nanoseconds
+    public long percentile(Phase phase, double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        for (int frame = 0; frame < count; frame++) {
+            sortScratch[frame] = samples[frame * PHASES.length + phase.ordinal()];
+        }
+        Arrays.sort(sortScratch, 0, count);
+        int index = (int) Math.ceil(percentile / 100 * count) - 1;
+        return sortScratch[Math.max(0, Math.min(count - 1, index))];
+    }
+
+    // Write the frames in the ring, oldest first, one row per frame
+    public void writeCsv(Path path) throws IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(path)) {
+            out.write("frame,end_ns");
+            for (Phase phase : PHASES) {
+                out.write("," + phase.getLabel() + "_ns");
+            }
+            out.newLine();
+
+            long firstFrame = framesRecorded - count;
+            for (int i = 0; i < count; i++) {
+                int slot = (next - count + i + capacity) % capacity;
+                out.write(Long.toString(firstFrame + i));
+                out.write(',');
+                out.write(Long.toString(frameTimes[slot]));
+                for (int phase = 0; phase < PHASES.length; phase++) {
+                    out.write(',');
+                    out.write(Long.toString(samples[slot * PHASES.length + phase]));
+                }
+                out.newLine();
+            }
+        }
+    }
+}
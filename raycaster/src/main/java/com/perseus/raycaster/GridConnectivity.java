@@ -0,0 +1,464 @@
+package com.perseus.raycaster;
+
+import java.util.Arrays;
+
+/*
+ * Keeps track of which open cells of the level editor's grid are connected
+ * to each other while the designer paints, so the editor can always tell
+ * whether a goal can be reached from the start point.
+ *
+ * Open cells (empty, start and end points) are grouped with a union-find.
+ * Opening a cell just unions it with its open neighbours. Adding a wall can
+ * split a group, which a union-find can't undo, so in that case the groups
+ * around the new wall are searched in lockstep: as soon as all searches meet
+ * nothing was split, and a search that runs out of cells before meeting the
+ * others has found a piece that was cut off. Only that piece is given a new
+ * group, so the work done is about the size of the smaller side of the cut.
+ *
+ * Union-find nodes can't be taken out of a tree that other cells may point
+ * through, so a cell that is re-labelled (or opened again) gets a fresh node
+ * instead, unless its old node is a root nobody is in anymore. Old nodes
+ * stay behind until the next full rebuild. There is room for a fixed number
+ * of extra nodes; when they run out everything is worked out again from the
+ * grid, which frees them all, rather than growing the arrays (on a 4096 x
+ * 4096 grid doubling them would cost hundreds of megabytes).
+ */
+public class GridConnectivity {
+    // Directions: up, right, down, left
+    private static final int[] DX = { 0, 1, 0, -1 };
+    private static final int[] DY = { -1, 0, 1, 0 };
+    // The 8 cells around a cell, clockwise from the one above
+    private static final int[] RING_X = { 0, 1, 1, 1, 0, -1, -1, -1 };
+    private static final int[] RING_Y = { -1, -1, 0, 1, 1, 1, 0, -1 };
+
+    private final byte[] grid; // The editor's grid, row by row
+    private final int size; // Grid is size x size
+
+    private int[] cellNode; // Union-find node currently used by each cell
+    private int[] parent; // Per node
+    private int[] members; // Per root node: open cells in the group
+    private int[] goals; // Per root node: end points in the group
+    private int nodeCount; // Nodes in use, the first size * size are the ones rebuild gives the cells
+
+    private int start = -1; // Cell of the start point, -1 if there is none
+    private int goalTiles = 0; // End points anywhere on the grid
+
+    // Reused by the searches that run when a wall is added
+    private final int[] mark; // Which search (and which update) last reached a cell
+    private int epoch = 0;
+    private final IntList[] searches = { new IntList(), new IntList(), new IntList(), new IntList() };
+    private final int[] neighbours = new int[4];
+    private final boolean[] ringOpen = new boolean[8];
+    private final int[] searchGroup = new int[4]; // Searches that met are merged into one group
+    private final boolean[] searchDone = new boolean[4];
+    private final int[] searchHead = new int[4];
+
+    public GridConnectivity(byte[] grid, int size) {
+        this.grid = grid;
+        this.size = size;
+        this.mark = new int[size * size];
+        rebuild();
+    }
+
+    // Work everything out from scratch, for example after the grid was replaced as a whole
+    public void rebuild() {
+        int cells = size * size;
+        if (cellNode == null) {
+            int capacity = cells + cells / 8 + 64; // The extra nodes for painting until the next rebuild
+            cellNode = new int[cells];
+            parent = new int[capacity];
+            members = new int[capacity];
+            goals = new int[capacity];
+        }
+        nodeCount = cells;
+        start = -1;
+        goalTiles = 0;
+
+        for (int cell = 0; cell < cells; cell++) {
+            cellNode[cell] = cell;
+            parent[cell] = cell;
+            members[cell] = 0;
+            goals[cell] = 0;
+            if (isOpen(cell)) {
+                members[cell] = 1;
+                if (grid[cell] == 3) {
+                    goals[cell] = 1;
+                    goalTiles++;
+                } else if (grid[cell] == 2) {
+                    start = cell;
+                }
+            }
+        }
+
+        for (int cell = 0; cell < cells; cell++) {
+            if (!isOpen(cell)) {
+                continue;
+            }
+            int x = cell % size;
+            if (x + 1 < size && isOpen(cell + 1)) {
+                union(cell, cell + 1);
+            }
+            if (cell + size < cells && isOpen(cell + size)) {
+                union(cell, cell + size);
+            }
+        }
+    }
+
+    /*
+     * Call after grid[cell] changed from oldTile to its current value. Returns
+     * true if cells other than this one may have changed whether they are
+     * reachable from the start, i.e. the whole overlay should be redrawn.
+     */
+    public boolean update(int cell, int oldTile) {
+        int newTile = grid[cell];
+        if (newTile == oldTile) {
+            return false;
+        }
+
+        boolean wasOpen = oldTile != 1;
+        boolean nowOpen = newTile != 1;
+
+        if (oldTile == 3) {
+            goalTiles--;
+        }
+        if (newTile == 3) {
+            goalTiles++;
+        }
+
+        boolean startMoved = false;
+        if (oldTile == 2 && start == cell) {
+            start = -1;
+            startMoved = true;
+        }
+        if (newTile == 2) {
+            start = cell;
+            startMoved = true;
+        }
+
+        if (wasOpen && nowOpen) {
+            // Same group, only the goal count may change
+            int root = find(cellNode[cell]);
+            goals[root] += ((newTile == 3) ? 1 : 0) - ((oldTile == 3) ? 1 : 0);
+            return startMoved || oldTile == 3 || newTile == 3;
+        } else if (nowOpen) {
+            return open(cell) || startMoved;
+        } else {
+            return close(cell, oldTile == 3) || startMoved;
+        }
+    }
+
+    // A wall was removed: the cell becomes its own group and joins its open neighbours
+    private boolean open(int cell) {
+        int node = cellNode[cell];
+        if (parent[node] != node || members[node] != 0) { // Still part of a group's tree
+            if (nodeCount == parent.length) {
+                rebuild(); // Out of nodes, the grid already has the cell open
+                return true;
+            }
+            node = newNode();
+        }
+        cellNode[cell] = node;
+        members[node] = 1;
+        goals[node] = (grid[cell] == 3) ? 1 : 0;
+
+        int x = cell % size;
+        int y = cell / size;
+        int joined = 0;
+        for (int d = 0; d < 4; d++) {
+            int nx = x + DX[d];
+            int ny = y + DY[d];
+            if (nx >= 0 && ny >= 0 && nx < size && ny < size && isOpen(ny * size + nx)) {
+                if (union(cell, ny * size + nx)) {
+                    joined++;
+                }
+            }
+        }
+        // Joining a single group only adds this cell, joining more connects groups that were apart
+        return joined > 1;
+    }
+
+    // A wall was added: take the cell out of its group and find out whether the group fell apart
+    private boolean close(int cell, boolean wasGoal) {
+        int root = find(cellNode[cell]);
+        members[root]--;
+        if (wasGoal) {
+            goals[root]--;
+        }
+
+        // Open neighbours, which may now be cut off from each other
+        int x = cell % size;
+        int y = cell / size;
+        int count = 0;
+        for (int d = 0; d < 4; d++) {
+            int nx = x + DX[d];
+            int ny = y + DY[d];
+            if (nx >= 0 && ny >= 0 && nx < size && ny < size && isOpen(ny * size + nx)) {
+                neighbours[count++] = ny * size + nx;
+            }
+        }
+
+        if (count <= 1 || connectedAround(x, y)) {
+            return false; // Nothing can have been cut off
+        }
+        return split(neighbours, count, root);
+    }
+
+    /*
+     * Quick local test: the 8 cells around (x, y) form a ring in which every two
+     * consecutive cells touch. If all open direct neighbours lie on one unbroken
+     * run of open ring cells they are still connected without the centre cell.
+     */
+    private boolean connectedAround(int x, int y) {
+        boolean[] open = ringOpen;
+        int firstClosed = -1;
+        for (int i = 0; i < 8; i++) {
+            int nx = x + RING_X[i];
+            int ny = y + RING_Y[i];
+            open[i] = nx >= 0 && ny >= 0 && nx < size && ny < size && isOpen(ny * size + nx);
+            if (!open[i] && firstClosed < 0) {
+                firstClosed = i;
+            }
+        }
+        if (firstClosed < 0) {
+            return true; // Completely surrounded by open cells
+        }
+
+        // Count the runs of open ring cells that contain a direct neighbour (even ring index)
+        int runsWithNeighbour = 0;
+        boolean inRun = false;
+        boolean runHasNeighbour = false;
+        for (int step = 1; step <= 8; step++) {
+            int i = (firstClosed + step) % 8;
+            if (open[i]) {
+                inRun = true;
+                runHasNeighbour |= (i % 2 == 0);
+            } else if (inRun) {
+                if (runHasNeighbour) {
+                    runsWithNeighbour++;
+                }
+                inRun = false;
+                runHasNeighbour = false;
+            }
+        }
+        return runsWithNeighbour <= 1;
+    }
+
+    // Search from every neighbour at once, giving each piece that gets cut off its own group
+    private boolean split(int[] neighbours, int count, int root) {
+        epoch++;
+        int[] group = searchGroup;
+        boolean[] done = searchDone;
+        int[] head = searchHead;
+        for (int s = 0; s < count; s++) {
+            group[s] = s;
+            done[s] = false;
+            head[s] = 0;
+            searches[s].clear();
+            searches[s].add(neighbours[s]);
+            mark[neighbours[s]] = epoch * 4 + s;
+        }
+        boolean splitHappened = false;
+
+        while (true) {
+            // Stop once every search that is still running belongs to the same group
+            int running = -1;
+            boolean oneGroup = true;
+            for (int s = 0; s < count; s++) {
+                if (!done[s]) {
+                    if (running < 0) {
+                        running = groupOf(group, s);
+                    } else if (groupOf(group, s) != running) {
+                        oneGroup = false;
+                    }
+                }
+            }
+            if (oneGroup) {
+                return splitHappened;
+            }
+
+            for (int s = 0; s < count; s++) {
+                if (done[s]) {
+                    continue;
+                }
+                IntList queue = searches[s];
+
+                if (head[s] < queue.size()) {
+                    // Expand one cell
+                    int cell = queue.get(head[s]++);
+                    int x = cell % size;
+                    int y = cell / size;
+                    for (int d = 0; d < 4; d++) {
+                        int nx = x + DX[d];
+                        int ny = y + DY[d];
+                        if (nx < 0 || ny < 0 || nx >= size || ny >= size) {
+                            continue;
+                        }
+                        int next = ny * size + nx;
+                        if (!isOpen(next)) {
+                            continue;
+                        }
+                        int seen = mark[next];
+                        if (seen / 4 == epoch) {
+                            // Reached by another search: they are connected
+                            int other = seen % 4;
+                            group[groupOf(group, other)] = groupOf(group, s);
+                        } else {
+                            mark[next] = epoch * 4 + s;
+                            queue.add(next);
+                        }
+                    }
+                } else if (groupExhausted(group, s, head, done, count)) {
+                    // Everything reachable from this group has been seen and it never met the
+                    // others, so it is a piece of its own now
+                    if (!relabel(group, s, done, count, root)) {
+                        rebuild(); // Out of nodes, work the pieces out from the grid instead
+                        return true;
+                    }
+                    splitHappened = true;
+                }
+            }
+        }
+    }
+
+    private int groupOf(int[] group, int s) {
+        while (group[s] != s) {
+            s = group[s];
+        }
+        return s;
+    }
+
+    private boolean groupExhausted(int[] group, int s, int[] head, boolean[] done, int count) {
+        int g = groupOf(group, s);
+        for (int t = 0; t < count; t++) {
+            if (!done[t] && groupOf(group, t) == g && head[t] < searches[t].size()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /*
+     * Move every cell found by the group of search s into a new group of its
+     * own. Returns false, changing nothing, if there aren't enough nodes left.
+     */
+    private boolean relabel(int[] group, int s, boolean[] done, int count, int root) {
+        int g = groupOf(group, s);
+        long needed = 1;
+        for (int t = 0; t < count; t++) {
+            if (!done[t] && groupOf(group, t) == g) {
+                needed += searches[t].size();
+            }
+        }
+        if (nodeCount + needed > parent.length) {
+            return false;
+        }
+        int node = newNode();
+        for (int t = 0; t < count; t++) {
+            if (done[t] || groupOf(group, t) != g) {
+                continue;
+            }
+            done[t] = true;
+            IntList cells = searches[t];
+            for (int i = 0; i < cells.size(); i++) {
+                int cell = cells.get(i);
+                int fresh = newNode();
+                parent[fresh] = node;
+                cellNode[cell] = fresh;
+                members[node]++;
+                members[root]--;
+                if (grid[cell] == 3) {
+                    goals[node]++;
+                    goals[root]--;
+                }
+            }
+        }
+        return true;
+    }
+
+    // A node of its own, callers check there is one left
+    private int newNode() {
+        int node = nodeCount++;
+        parent[node] = node;
+        members[node] = 0;
+        goals[node] = 0;
+        return node;
+    }
+
+    private int find(int node) {
+        int root = node;
+        while (parent[root] != root) {
+            root = parent[root];
+        }
+        // Path compression
+        while (parent[node] != root) {
+            int next = parent[node];
+            parent[node] = root;
+            node = next;
+        }
+        return root;
+    }
+
+    // Union the groups of two cells, returns false if they already were one group
+    private boolean union(int cellA, int cellB) {
+        int a = find(cellNode[cellA]);
+        int b = find(cellNode[cellB]);
+        if (a == b) {
+            return false;
+        }
+        if (members[a] < members[b]) {
+            int swap = a;
+            a = b;
+            b = swap;
+        }
+        parent[b] = a;
+        members[a] += members[b];
+        goals[a] += goals[b];
+        return true;
+    }
+
+    private boolean isOpen(int cell) {
+        return grid[cell] != 1;
+    }
+
+    public boolean hasStart() {
+        return start >= 0;
+    }
+
+    public boolean hasGoal() {
+        return goalTiles > 0;
+    }
+
+    // Whether at least one end point can be reached from the start point
+    public boolean isGoalReachable() {
+        return start >= 0 && goals[find(cellNode[start])] > 0;
+    }
+
+    public boolean isReachableFromStart(int cell) {
+        return start >= 0 && isOpen(cell) && find(cellNode[cell]) == find(cellNode[start]);
+    }
+
+    // A growable list of ints, so searches don't box every cell
+    private static class IntList {
+        private int[] values = new int[64];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        int get(int index) {
+            return values[index];
+        }
+
+        int size() {
+            return size;
+        }
+
+        void clear() {
+            size = 0;
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package com.perseus.raycaster;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/*
+ * A recorded play session: the movement keys held during every simulation
+ * tick (see Player.update), one byte per tick. The simulation only depends on
+ * the level and these inputs, so replaying them on the same level ends with
+ * the player in exactly the same place, which makes a real session usable as
+ * a repeatable end-to-end test (see ReplayBenchmark in raycaster-bench).
+ *
+ * Besides the inputs a recording stores which level it was made on (size,
+ * start and a checksum of the tiles) and how it ended: the final player
+ * position and angle and the tick the goal was reached on, if it was.
+ *
+ * File layout (big endian):
+ *   0  int    magic "RCIR"
+ *   4  int    format version
+ *   8  int    level width in tiles
+ *  12  int    level height in tiles
+ *  16  int    tile size
+ *  20  int    start column
+ *  24  int    start row
+ *  28  double player start angle in radians
+ *  36  long   CRC32 of the tiles
+ *  44  double final x
+ *  52  double final y
+ *  60  double final angle
+ *  68  int    tick the goal was reached on, -1 if it wasn't
+ *  72  int    number of ticks
+ *  76  ...    reserved, zero
+ *  96  byte[] input of every tick
+ */
+public class InputRecording {
+    public static final String EXTENSION = ".rec";
+
+    private static final int MAGIC = 0x52434952; // "RCIR"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 96;
+
+    private final int width;
+    private final int height;
+    private final int tileSize;
+    private final int startCol;
+    private final int startRow;
+    private final double startAngle;
+    private final long tileChecksum;
+
+    private byte[] inputs = new byte[1024];
+    private int ticks;
+
+    private double finalX;
+    private double finalY;
+    private double finalAngle;
+    private int completionTick = -1;
+
+    // Start an empty recording of a session on the level
+    public InputRecording(Level level) {
+        this(level.getMap().getWidth(), level.getMap().getHeight(), level.getMap().getTileSize(),
+                level.getStartCol(), level.getStartRow(), level.getPlayerAngle(), checksum(level.getMap()));
+    }
+
+    private InputRecording(int width, int height, int tileSize, int startCol, int startRow, double startAngle,
+            long tileChecksum) {
+        this.width = width;
+        this.height = height;
+        this.tileSize = tileSize;
+        this.startCol = startCol;
+        this.startRow = startRow;
+        this.startAngle = startAngle;
+        this.tileChecksum = tileChecksum;
+    }
+
+    // Add the input of the next tick
+    public void record(int input) {
+        if (ticks == inputs.length) {
+            inputs = Arrays.copyOf(inputs, Math.max(1024, ticks * 2));
+        }
+        inputs[ticks++] = (byte) input;
+    }
+
+    // Note how the session ended, completionTick being -1 if the goal wasn't reached
+    public void finish(Player player, int completionTick) {
+        this.finalX = player.getX();
+        this.finalY = player.getY();
+        this.finalAngle = player.getAngle();
+        this.completionTick = completionTick;
+    }
+
+    // Whether the recording was made on this level, so replaying it on the level makes sense
+    public boolean matches(Level level) {
+        Map map = level.getMap();
+        return map.getWidth() == width && map.getHeight() == height && map.getTileSize() == tileSize
+                && level.getStartCol() == startCol && level.getStartRow() == startRow
+                && level.getPlayerAngle() == startAngle && checksum(map) == tileChecksum;
+    }
+
+    private static long checksum(Map map) {
+        CRC32 crc = new CRC32();
+        byte[] row = new byte[map.getWidth()];
+        for (int y = 0; y < map.getHeight(); y++) {
+            for (int x = 0; x < row.length; x++) {
+                row[x] = (byte) map.getTile(x, y);
+            }
+            crc.update(row, 0, row.length);
+        }
+        return crc.getValue();
+    }
+
+    public void write(Path path) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + ticks);
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putInt(width);
+        buffer.putInt(height);
+        buffer.putInt(tileSize);
+        buffer.putInt(startCol);
+        buffer.putInt(startRow);
+        buffer.putDouble(startAngle);
+        buffer.putLong(tileChecksum);
+        buffer.putDouble(finalX);
+        buffer.putDouble(finalY);
+        buffer.putDouble(finalAngle);
+        buffer.putInt(completionTick);
+        buffer.putInt(ticks);
+        buffer.position(HEADER_SIZE);
+        buffer.put(inputs, 0, ticks);
+        Files.write(path, buffer.array());
+    }
+
+    public static InputRecording read(Path path) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException(path + " is not an input recording");
+        }
+        int version = buffer.getInt(4);
+        if (version != VERSION) {
+            throw new IOException(path + " has unsupported recording format version " + version);
+        }
+
+        buffer.position(8);
+        InputRecording recording = new InputRecording(buffer.getInt(), buffer.getInt(), buffer.getInt(),
+                buffer.getInt(), buffer.getInt(), buffer.getDouble(), buffer.getLong());
+        recording.finalX = buffer.getDouble();
+        recording.finalY = buffer.getDouble();
+        recording.finalAngle = buffer.getDouble();
+        recording.completionTick = buffer.getInt();
+        int ticks = buffer.getInt();
+        if (ticks < 0 || HEADER_SIZE + (long) ticks != buffer.capacity()) {
+            throw new IOException(path + " has an input section that doesn't match its " + ticks + " tick header");
+        }
+
+        recording.inputs = Arrays.copyOfRange(buffer.array(), HEADER_SIZE, HEADER_SIZE + ticks);
+        recording.ticks = ticks;
+        return recording;
+    }
+
+    public int getTickCount() {
+        return ticks;
+    }
+
+    public int getInput(int tick) {
+        return inputs[tick];
+    }
+
+    public double getFinalX() {
+        return finalX;
+    }
+
+    public double getFinalY() {
+        return finalY;
+    }
+
+    public double getFinalAngle() {
+        return finalAngle;
+    }
+
+    public int getCompletionTick() {
+        return completionTick;
+    }
+}
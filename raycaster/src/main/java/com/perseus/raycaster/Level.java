@@ -0,0 +1,43 @@
+package com.perseus.raycaster;
+
+/*
+ * A loaded level: the (padded) map plus where and facing which way the player
+ * starts. A Level is never changed while playing, so restarting just creates
+ * a fresh Player from it. (Edits to the level file are swapped in as a new
+ * Level, see Raycaster.applyLevelChange.)
+ */
+public class Level {
+    private final Map map;
+    private final int startCol;
+    private final int startRow;
+    private final double playerAngle; // In radians
+
+    public Level(Map map, int startCol, int startRow, double playerAngle) {
+        this.map = map;
+        this.startCol = startCol;
+        this.startRow = startRow;
+        this.playerAngle = playerAngle;
+    }
+
+    // A player standing in the middle of the start tile
+    public Player createPlayer() {
+        int tileSize = map.getTileSize();
+        return new Player(startCol * tileSize + tileSize / 2, startRow * tileSize + tileSize / 2, playerAngle);
+    }
+
+    public Map getMap() {
+        return map;
+    }
+
+    public int getStartCol() {
+        return startCol;
+    }
+
+    public int getStartRow() {
+        return startRow;
+    }
+
+    public double getPlayerAngle() {
+        return playerAngle;
+    }
+}
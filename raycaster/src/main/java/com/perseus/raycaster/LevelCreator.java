@@ -4,9 +4,15 @@ import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.stage.Stage;
 import javafx.scene.layout.*;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.control.*;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import javafx.scene.input.MouseButton;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.input.ScrollEvent;
 import javafx.scene.paint.Color;
-import javafx.scene.shape.Rectangle;
 import javafx.scene.text.Text;
 import javafx.scene.Scene;
 
@@ -18,25 +24,55 @@ import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
+import javafx.application.Platform;
 import java.io.File;
-import java.util.LinkedList;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
 
 public class LevelCreator {
 
     private static final int WINDOW_WIDTH = 750;
     private static final int WINDOW_HEIGHT = 550;
     private static int GRID_SIZE = 10; // n x n grid
-    private static final int CELL_SIZE = 400 / GRID_SIZE;
+    private static final int MAX_GRID_SIZE = 4096;
+    private static final int MAX_GENERATED_SIZE = 65536; // Generated straight into a level file, never into the grid
     private static final int PADDING = 10;
     
     private int playerRotation = 0;
     
     private boolean startPointPlaced = false;
     private int brush = 1;
-    private Pane gridPane;
-    private int[][] gridData = new int[GRID_SIZE][GRID_SIZE]; // 2D array of n x n dimensions
+    private byte[] gridData = new byte[GRID_SIZE * GRID_SIZE]; // n x n grid stored row by row
+    private GridConnectivity connectivity = new GridConnectivity(gridData, GRID_SIZE); // Kept up to date while painting
+    private boolean showReachable = true; // Tint the empty cells that can be reached from the start point
+
+    /*
+     * The grid is drawn onto a single canvas instead of using a node per cell.
+     * Only the cells inside the viewport are drawn, and the cell under the mouse
+     * is found with arithmetic, so the grid size doesn't affect the scene graph.
+     * cellSize is the zoom (pixels per cell) and viewX/viewY the pan (position of
+     * the viewport's top left corner in grid pixels).
+     */
+    private Canvas gridCanvas;
+    private double cellSize = 40;
+    private double viewX = 0;
+    private double viewY = 0;
+    private double dragStartX, dragStartY; // Mouse position when a pan started
+    private int lastPaintedRow = -1, lastPaintedCol = -1; // To fill gaps when the mouse moves quickly
+    private WritableImage viewImage;
+    private int[] viewPixels;
+
+    private static final int EMPTY_COLOR = 0xFF000000; // Color.BLACK
+    private static final int WALL_COLOR = 0xFF32CD32; // Color.LIMEGREEN
+    private static final int START_COLOR = 0xFF008000; // Color.GREEN
+    private static final int END_COLOR = 0xFFB22222; // Color.FIREBRICK
+    private static final int LINE_COLOR = 0xFF008000; // Color.GREEN
+    private static final int REACHABLE_COLOR = 0xFF0F3A0F; // Empty cells reachable from the start point
     
     private Label statusLabel;
+    private Label pathLabel;
 
     public Scene createScene(Stage primaryStage) {
         BorderPane root = new BorderPane();
@@ -97,25 +133,33 @@ public class LevelCreator {
         applyGridSizeButton.setPrefHeight(29);
         styleButton(applyGridSizeButton);
 
+        Button generateButton = new Button("Generate");
+        generateButton.setPrefWidth(70);
+        generateButton.setPrefHeight(29);
+        styleButton(generateButton);
+        Tooltip.install(generateButton, new Tooltip("Generate a maze or cave instead of painting it."));
+        generateButton.setOnAction(e -> openGeneratorWindow());
+        HBox gridSizeButtons = new HBox(PADDING, applyGridSizeButton, generateButton);
+        gridSizeButtons.setAlignment(Pos.CENTER);
+
         applyGridSizeButton.setOnAction(e -> {
             String input = gridSizeInput.getText();
             try {
                 int newSize = Integer.parseInt(input);
-                if (newSize > 2 && newSize <= 50) { // Ensure the size is within a valid range
+                if (newSize > 2 && newSize <= MAX_GRID_SIZE) { // Ensure the size is within a valid range
                     showStatusMessage("Grid size updated to: " + newSize, false);
                     
                     // Update GRID_SIZE and recreate gridData
                     GRID_SIZE = newSize;
-                    gridData = new int[GRID_SIZE][GRID_SIZE]; // Reset the grid data
+                    gridData = new byte[GRID_SIZE * GRID_SIZE]; // Reset the grid data
+                    connectivity = new GridConnectivity(gridData, GRID_SIZE);
+                    startPointPlaced = false;
+                    updatePathLabel();
 
-                    // Clear existing grid and recreate it
-                    gridPane.getChildren().clear();
-                    createGrid(gridPane);
-
-                    // Update cell size dynamically
-                    updateGridSize(gridPane, gridPane.getScene());
+                    // Show the whole new grid
+                    fitGridToView();
                 } else {
-                    showStatusMessage("Invalid grid size. Must be 3-50.", true);
+                    showStatusMessage("Invalid grid size. Must be 3-" + MAX_GRID_SIZE + ".", true);
                 }
             } catch (NumberFormatException ex) {
                 showStatusMessage("Invalid input. Please enter a whole number.", true);
@@ -152,7 +196,17 @@ public class LevelCreator {
         exportButton.setStyle("-fx-background-color: black; -fx-text-fill: orange; -fx-border-color: orange; -fx-border-width: 2px;");
         exportButton.setOnMouseEntered(e -> exportButton.setStyle("-fx-background-color: orange; -fx-text-fill: black; -fx-border-color: orange;"));
         exportButton.setOnMouseExited(e -> exportButton.setStyle("-fx-background-color: black; -fx-text-fill: orange; -fx-border-color: orange;"));
-        exportButton.setOnAction(e -> exportGrid());
+        exportButton.setOnAction(e -> exportGrid(false));
+
+        // Export Binary Button
+        Button exportBinaryButton = new Button("Export Binary");
+        exportBinaryButton.setPrefWidth(180);
+        exportBinaryButton.setPrefHeight(38);
+        exportBinaryButton.setStyle("-fx-background-color: black; -fx-text-fill: orange; -fx-border-color: orange; -fx-border-width: 2px;");
+        exportBinaryButton.setOnMouseEntered(e -> exportBinaryButton.setStyle("-fx-background-color: orange; -fx-text-fill: black; -fx-border-color: orange;"));
+        exportBinaryButton.setOnMouseExited(e -> exportBinaryButton.setStyle("-fx-background-color: black; -fx-text-fill: orange; -fx-border-color: orange;"));
+        Tooltip.install(exportBinaryButton, new Tooltip("Export in the compact binary format, for very large levels."));
+        exportBinaryButton.setOnAction(e -> exportGrid(true));
         
         // Return to Menu Button
         Button returnButton = new Button("Return to Menu");
@@ -173,12 +227,26 @@ public class LevelCreator {
         statusLabel = new Label();
         statusLabel.setStyle("-fx-text-fill: red; -fx-font-size: 14px;");
 
+        // Live check of the export condition, updated on every brush stroke
+        pathLabel = new Label();
+        updatePathLabel();
+
+        CheckBox reachableCheckBox = new CheckBox("Show Reachable Area");
+        reachableCheckBox.setSelected(showReachable);
+        reachableCheckBox.setStyle("-fx-text-fill: limegreen;");
+        Tooltip.install(reachableCheckBox, new Tooltip("Tint the empty tiles the player can walk to from the start point."));
+        reachableCheckBox.setOnAction(e -> {
+            showReachable = reachableCheckBox.isSelected();
+            drawGrid();
+        });
+
         // Add elements to button panel
         buttonPanel.getChildren().addAll(
                 brushLabel, emptyTileBrush, coloredTileBrush, startPointBrush, endPointBrush,
-                gridSizeLabel, gridSizeInput, applyGridSizeButton,
+                gridSizeLabel, gridSizeInput, gridSizeButtons,
                 orientationLabel, orientationSpinner,
-                resetButton, exportButton, returnButton, helpButton
+                pathLabel, reachableCheckBox,
+                resetButton, exportButton, exportBinaryButton, returnButton, helpButton
         );
 
         buttonPanel.setAlignment(Pos.TOP_CENTER);
@@ -188,21 +256,24 @@ public class LevelCreator {
         gridContainer.setPadding(new Insets(PADDING, 0, 2*PADDING, 0));
 
 
-        // Initialize gridPane
-        gridPane = new Pane();
-        gridContainer.getChildren().add(gridPane);
+        // Initialize the grid canvas
+        gridCanvas = new Canvas();
+        Tooltip.install(gridCanvas, new Tooltip("Left mouse: paint, right mouse drag: pan, scroll: zoom, double right click: fit grid"));
+        gridContainer.getChildren().add(gridCanvas);
 
         root.setCenter(gridContainer);
         root.setLeft(buttonPanel);
         root.setBottom(statusLabel); // Add status label to the bottom of the layout
 
-        createGrid(gridPane);
+        createGrid(gridCanvas);
 
         Scene scene = new Scene(root, WINDOW_WIDTH, WINDOW_HEIGHT);
-        scene.widthProperty().addListener((obs, oldVal, newVal) -> updateGridSize(gridPane, scene));
+        scene.widthProperty().addListener((obs, oldVal, newVal) -> updateGridSize(gridCanvas, scene));
         scene.heightProperty().addListener((obs, oldVal, newVal) -> {
-            updateGridSize(gridPane, scene);
+            updateGridSize(gridCanvas, scene);
         });
+        updateGridSize(gridCanvas, scene);
+        fitGridToView();
 
         return scene;
     }
@@ -217,13 +288,16 @@ public class LevelCreator {
         String[] helpMessages = {
             "Level Creator",
             "Choose Grid Size and click Apply",
+            "Or click Generate to have a maze or cave made for you",
             "Pick Brush with Brush Picker",
             "Click or hold LMB on tiles to paint",
+            "Scroll to zoom, drag with RMB to move around large grids",
             "There must be one start point and at least one end point",
             "There must be at least one path connecting start point to at least one end point",
+            "The panel shows live whether an end point can be reached from the start point",
             "Choose player orientation (degrees) starting facing east",
             "Reset to clear the board if needed",
-            "Export to save level",
+            "Export to save level (Export Binary for very large levels)",
             "Once exported, Return to Menu and Play Level",
         };
 
@@ -241,6 +315,141 @@ public class LevelCreator {
         helpStage.show();
     }    
     
+    /*
+     * Settings for LevelGenerator. A generated level either replaces the
+     * editor's grid, to be touched up and exported as usual, or (for sizes
+     * the editor can't hold) is written straight to the binary level file.
+     * Generating runs in the background so the window stays responsive.
+     */
+    private void openGeneratorWindow() {
+        Stage generatorStage = new Stage();
+        generatorStage.setTitle("Generate Level");
+
+        VBox layout = new VBox(PADDING);
+        layout.setStyle("-fx-background-color: black;");
+        layout.setPadding(new Insets(2 * PADDING));
+        layout.setAlignment(Pos.TOP_CENTER);
+
+        Label styleTitle = new Label("Style");
+        styleLabel(styleTitle);
+        ToggleGroup styleGroup = new ToggleGroup();
+        RadioButton mazeStyle = new RadioButton("Maze");
+        RadioButton caveStyle = new RadioButton("Cave");
+        styleRadioButton(mazeStyle);
+        styleRadioButton(caveStyle);
+        mazeStyle.setToggleGroup(styleGroup);
+        caveStyle.setToggleGroup(styleGroup);
+        mazeStyle.setSelected(true);
+
+        Label sizeLabel = new Label("Size");
+        styleLabel(sizeLabel);
+        TextField sizeInput = new TextField(String.valueOf(GRID_SIZE));
+        styleTextField(sizeInput);
+
+        Label seedLabel = new Label("Seed");
+        styleLabel(seedLabel);
+        TextField seedInput = new TextField();
+        seedInput.setPromptText("Leave empty for a random one");
+        styleTextField(seedInput);
+
+        Label densityLabel = new Label();
+        styleLabel(densityLabel);
+        Slider densitySlider = new Slider(0, 1, 1);
+        Tooltip.install(densitySlider, new Tooltip("Maze: share of walls kept, less makes loops. Cave: share of rock."));
+        densityLabel.setText(String.format("Density %.2f", densitySlider.getValue()));
+        densitySlider.valueProperty().addListener((observable, oldValue, newValue) ->
+                densityLabel.setText(String.format("Density %.2f", newValue.doubleValue())));
+        // Each style has its own sensible starting point
+        styleGroup.selectedToggleProperty().addListener((observable, oldValue, newValue) ->
+                densitySlider.setValue((newValue == caveStyle) ? 0.45 : 1));
+
+        Label generatorStatus = new Label();
+        generatorStatus.setWrapText(true);
+        styleLabel(generatorStatus);
+
+        Button intoEditorButton = new Button("Into Editor");
+        Button toFileButton = new Button("Straight to File");
+        for (Button button : new Button[] { intoEditorButton, toFileButton }) {
+            button.setPrefWidth(180);
+            button.setPrefHeight(38);
+            styleButton(button);
+        }
+        Tooltip.install(intoEditorButton, new Tooltip("Replace the grid with the generated level (up to " + MAX_GRID_SIZE + ")."));
+        Tooltip.install(toFileButton, new Tooltip("Write the level as a binary level file without loading it into the editor (up to " + MAX_GENERATED_SIZE + ")."));
+
+        for (Button button : new Button[] { intoEditorButton, toFileButton }) {
+            boolean toFile = button == toFileButton;
+            button.setOnAction(e -> {
+                int size;
+                long seed;
+                try {
+                    size = Integer.parseInt(sizeInput.getText().trim());
+                    String seedText = seedInput.getText().trim();
+                    seed = seedText.isEmpty() ? new Random().nextLong() : Long.parseLong(seedText);
+                } catch (NumberFormatException ex) {
+                    generatorStatus.setText("Size and seed must be whole numbers.");
+                    return;
+                }
+                int maxSize = toFile ? MAX_GENERATED_SIZE : MAX_GRID_SIZE;
+                if (size <= 2 || size > maxSize) {
+                    generatorStatus.setText("Invalid size. Must be 3-" + maxSize + ".");
+                    return;
+                }
+                LevelGenerator.Style style = caveStyle.isSelected() ? LevelGenerator.Style.CAVE : LevelGenerator.Style.MAZE;
+                LevelGenerator generator = new LevelGenerator(style, size, seed, densitySlider.getValue());
+                String description = style.name().toLowerCase() + " " + size + " x " + size + ", seed " + seed;
+
+                intoEditorButton.setDisable(true);
+                toFileButton.setDisable(true);
+                generatorStatus.setText("Generating " + description + "...");
+                long startTime = System.nanoTime();
+                CompletableFuture.runAsync(() -> {
+                    try {
+                        if (toFile) {
+                            String filePath = LevelRepository.EXPORT_DIRECTORY + "/LevelData" + LevelFile.EXTENSION;
+                            generator.write(Paths.get(filePath), Map.TILE_SIZE, playerRotation);
+                            Platform.runLater(() -> showStatusMessage("Generated " + description + " to " + filePath, false));
+                        } else {
+                            byte[] grid = generator.generate();
+                            GridConnectivity gridConnectivity = new GridConnectivity(grid, size);
+                            Platform.runLater(() -> {
+                                setGeneratedGrid(size, grid, gridConnectivity);
+                                showStatusMessage("Generated " + description, false);
+                            });
+                        }
+                        double seconds = (System.nanoTime() - startTime) / 1e9;
+                        Platform.runLater(() -> generatorStatus.setText(String.format("Generated %s in %.2f s", description, seconds)));
+                    } catch (Exception ex) {
+                        ex.printStackTrace();
+                        Platform.runLater(() -> generatorStatus.setText("Error generating the level."));
+                    } finally {
+                        Platform.runLater(() -> {
+                            intoEditorButton.setDisable(false);
+                            toFileButton.setDisable(false);
+                        });
+                    }
+                });
+            });
+        }
+
+        layout.getChildren().addAll(styleTitle, mazeStyle, caveStyle, sizeLabel, sizeInput, seedLabel, seedInput,
+                densityLabel, densitySlider, intoEditorButton, toFileButton, generatorStatus);
+
+        Scene generatorScene = new Scene(layout, 300, 520);
+        generatorStage.setScene(generatorScene);
+        generatorStage.show();
+    }
+
+    // Replace the grid with a generated one, which comes with its start and end points placed
+    private void setGeneratedGrid(int size, byte[] grid, GridConnectivity gridConnectivity) {
+        GRID_SIZE = size;
+        gridData = grid;
+        connectivity = gridConnectivity;
+        startPointPlaced = true;
+        updatePathLabel();
+        fitGridToView();
+    }
+
     // Helper methods for styling controls
     private void styleButton(Button button) {
         button.setStyle("-fx-background-color: black; -fx-text-fill: limegreen; -fx-border-color: limegreen; -fx-border-width: 2px;");
@@ -260,99 +469,281 @@ public class LevelCreator {
         textField.setStyle("-fx-background-color: black; -fx-text-fill: limegreen; -fx-border-color: limegreen; -fx-border-width: 2px;");
     }
 
-    private void createGrid(Pane gridPane) {
-        for (int row = 0; row < GRID_SIZE; row++) {
-            for (int col = 0; col < GRID_SIZE; col++) {
-                Rectangle cell = new Rectangle(CELL_SIZE, CELL_SIZE);
-                cell.setFill(Color.BLACK);
-                cell.setStroke(Color.GREEN);
+    // Mouse handling for the whole grid: which cell was hit is worked out from the position
+    private void createGrid(Canvas canvas) {
+        canvas.setOnMousePressed(event -> {
+            if (event.getButton() == MouseButton.PRIMARY) {
+                lastPaintedRow = -1;
+                paintAt(event);
+            } else {
+                if (event.getClickCount() == 2) {
+                    fitGridToView();
+                }
+                dragStartX = event.getX();
+                dragStartY = event.getY();
+            }
+        });
 
-                final int r = row;
-                final int c = col;
+        canvas.setOnMouseDragged(event -> {
+            if (event.getButton() == MouseButton.PRIMARY) {
+                paintAt(event);
+            } else {
+                // Pan
+                viewX -= event.getX() - dragStartX;
+                viewY -= event.getY() - dragStartY;
+                dragStartX = event.getX();
+                dragStartY = event.getY();
+                clampView();
+                drawGrid();
+            }
+        });
 
-                // Start drag detection
-                cell.setOnDragDetected(event -> {
-                    cell.startFullDrag(); // Enable full drag mode
-                    lightUpCell(cell, r, c); // Light up the initial cell on drag start
-                });
+        canvas.setOnScroll(this::zoom);
+    }
 
-                // Handle mouse pressed
-                cell.setOnMousePressed(event -> lightUpCell(cell, r, c));
+    // Zoom in or out around the mouse position
+    private void zoom(ScrollEvent event) {
+        if (event.getDeltaY() == 0) {
+            return;
+        }
+        double factor = (event.getDeltaY() > 0) ? 1.25 : 0.8;
+        double newCellSize = Math.max(minCellSize(), Math.min(64, cellSize * factor));
+
+        // Keep the point under the mouse in place
+        double gridX = (viewX + event.getX()) / cellSize;
+        double gridY = (viewY + event.getY()) / cellSize;
+        cellSize = newCellSize;
+        viewX = gridX * cellSize - event.getX();
+        viewY = gridY * cellSize - event.getY();
+
+        clampView();
+        drawGrid();
+    }
+
+    // The zoom level at which the whole grid fits in the canvas
+    private double minCellSize() {
+        double viewSize = Math.min(gridCanvas.getWidth(), gridCanvas.getHeight());
+        return (viewSize > 0) ? viewSize / GRID_SIZE : 1;
+    }
+
+    private void fitGridToView() {
+        cellSize = minCellSize();
+        viewX = 0;
+        viewY = 0;
+        clampView();
+        drawGrid();
+    }
 
-                // Handle mouse drag entering the cell
-                cell.setOnMouseDragEntered(event -> lightUpCell(cell, r, c));
+    // Keep the grid on screen, centered if it is smaller than the canvas
+    private void clampView() {
+        double gridPixels = GRID_SIZE * cellSize;
+        viewX = clampAxis(viewX, gridPixels, gridCanvas.getWidth());
+        viewY = clampAxis(viewY, gridPixels, gridCanvas.getHeight());
+    }
 
-                gridPane.getChildren().add(cell);
+    private double clampAxis(double view, double gridPixels, double viewSize) {
+        if (gridPixels <= viewSize) {
+            return -(viewSize - gridPixels) / 2;
+        }
+        return Math.max(0, Math.min(view, gridPixels - viewSize));
+    }
+
+    // Paint the cell under the mouse, and every cell on the way there from the last one
+    private void paintAt(MouseEvent event) {
+        int col = (int) Math.floor((viewX + event.getX()) / cellSize);
+        int row = (int) Math.floor((viewY + event.getY()) / cellSize);
+
+        if (lastPaintedRow < 0) {
+            if (inGrid(row, col)) {
+                lightUpCell(row, col);
+            }
+        } else {
+            int steps = Math.max(Math.abs(row - lastPaintedRow), Math.abs(col - lastPaintedCol));
+            for (int i = 1; i <= steps; i++) {
+                int r = lastPaintedRow + Math.round((float) (row - lastPaintedRow) * i / steps);
+                int c = lastPaintedCol + Math.round((float) (col - lastPaintedCol) * i / steps);
+                if (inGrid(r, c)) {
+                    lightUpCell(r, c);
+                }
             }
         }
+        lastPaintedRow = row;
+        lastPaintedCol = col;
     }
 
-    private void lightUpCell(Rectangle cell, int row, int col) {
+    private boolean inGrid(int row, int col) {
+        return row >= 0 && col >= 0 && row < GRID_SIZE && col < GRID_SIZE;
+    }
+
+    private void lightUpCell(int row, int col) {
+        int index = row * GRID_SIZE + col;
         if (brush == 2) {
         	if (!startPointPlaced) {
 	            // Only place the start point if one hasn't been placed yet
-	            gridData[row][col] = brush;
-	            cell.setFill(Color.GREEN);
+	            setCell(row, col, brush);
 	            startPointPlaced = true; // Set the flag to true after placing the start point
-        	} else {
+        	} else if (gridData[index] != 2) {
         		showStatusMessage("You may only have one start point.", true);
         	}
         } else if (brush != 2) {
             // For other brushes (empty, colored, etc.), allow the action
-            if (gridData[row][col] != brush) {
-            	if (gridData[row][col] == 2) startPointPlaced = false;
-                gridData[row][col] = brush;
-                if (brush == 0) {
-                    cell.setFill(Color.BLACK);
-                } else if (brush == 1) {
-                    cell.setFill(Color.LIMEGREEN);
-                } else if (brush == 3) {
-                    cell.setFill(Color.FIREBRICK);
-                }
+            if (gridData[index] != brush) {
+            	if (gridData[index] == 2) startPointPlaced = false;
+                setCell(row, col, brush);
             }
         }
     }
 
+    // Paint one cell and bring the connectivity and the view up to date
+    private void setCell(int row, int col, int tile) {
+        int index = row * GRID_SIZE + col;
+        int oldTile = gridData[index];
+        gridData[index] = (byte) tile;
+        if (connectivity.update(index, oldTile) && showReachable) {
+            drawGrid(); // The reachable area changed beyond this cell
+        } else {
+            drawCell(row, col);
+        }
+        updatePathLabel();
+    }
 
-    private void updateGridSize(Pane gridPane, Scene scene) {
-        double availableWidth = scene.getWidth() - 200 - PADDING;
-        double availableHeight = scene.getHeight() - 3 * PADDING;
-        double gridSize = Math.min(availableWidth, availableHeight);
+    private void updatePathLabel() {
+        if (connectivity.isGoalReachable()) {
+            pathLabel.setText("End point reachable");
+            pathLabel.setStyle("-fx-text-fill: limegreen; -fx-font-size: 14px;");
+        } else {
+            pathLabel.setText("No path to an end point");
+            pathLabel.setStyle("-fx-text-fill: firebrick; -fx-font-size: 14px;");
+        }
+    }
+
+    private int cellColor(int index) {
+        int tile = gridData[index];
+        if (tile == 0 && showReachable && connectivity.isReachableFromStart(index)) {
+            return REACHABLE_COLOR;
+        }
+        switch (tile) {
+        case 1:
+            return WALL_COLOR;
+        case 2:
+            return START_COLOR;
+        case 3:
+            return END_COLOR;
+        default:
+            return EMPTY_COLOR;
+        }
+    }
+
+    // Redraw a single cell after it was painted
+    private void drawCell(int row, int col) {
+        double x = col * cellSize - viewX;
+        double y = row * cellSize - viewY;
+        if (x + cellSize < 0 || y + cellSize < 0 || x > gridCanvas.getWidth() || y > gridCanvas.getHeight()) {
+            return; // Not visible
+        }
+
+        GraphicsContext gc = gridCanvas.getGraphicsContext2D();
+        int argb = cellColor(row * GRID_SIZE + col);
+        gc.setFill(Color.rgb((argb >> 16) & 0xFF, (argb >> 8) & 0xFF, argb & 0xFF));
+        gc.fillRect(x, y, cellSize, cellSize);
+        if (cellSize >= 4) {
+            gc.setStroke(Color.GREEN);
+            gc.setLineWidth(1);
+            gc.strokeRect(x + 0.5, y + 0.5, cellSize - 1, cellSize - 1);
+        }
+    }
 
-        gridPane.setPrefSize(gridSize, gridSize);
+    /*
+     * Redraw everything that is visible. Every canvas pixel is colored by
+     * looking up the cell under it, so the cost depends on the canvas size and
+     * not on the grid size. The column / row of every pixel is worked out once
+     * per redraw.
+     */
+    private void drawGrid() {
+        int width = (int) gridCanvas.getWidth();
+        int height = (int) gridCanvas.getHeight();
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+        if (viewImage == null || (int) viewImage.getWidth() != width || (int) viewImage.getHeight() != height) {
+            viewImage = new WritableImage(width, height);
+            viewPixels = new int[width * height];
+        }
 
-        double cellSize = gridSize / GRID_SIZE;
+        boolean lines = cellSize >= 4; // Grid lines would just be noise when zoomed far out
+        int[] cols = new int[width];
+        int[] rows = new int[height];
+        for (int x = 0; x < width; x++) {
+            cols[x] = cellAt(viewX + x, lines);
+        }
+        for (int y = 0; y < height; y++) {
+            rows[y] = cellAt(viewY + y, lines);
+        }
 
-        int cellIndex = 0;
-        for (int row = 0; row < GRID_SIZE; row++) {
-            for (int col = 0; col < GRID_SIZE; col++) {
-                Rectangle cell = (Rectangle) gridPane.getChildren().get(cellIndex++);
-                cell.setWidth(cellSize);
-                cell.setHeight(cellSize);
-                cell.setX(col * cellSize);
-                cell.setY(row * cellSize);
+        for (int y = 0; y < height; y++) {
+            int row = rows[y];
+            int offset = y * width;
+            for (int x = 0; x < width; x++) {
+                int col = cols[x];
+                int color;
+                if (row == -1 || col == -1) {
+                    color = 0xFF000000; // Outside the grid
+                } else if (row == -2 || col == -2) {
+                    color = LINE_COLOR;
+                } else {
+                    color = cellColor(row * GRID_SIZE + col);
+                }
+                viewPixels[offset + x] = color;
             }
         }
-        
-        startPointPlaced = false;
+
+        viewImage.getPixelWriter().setPixels(0, 0, width, height, PixelFormat.getIntArgbInstance(), viewPixels, 0, width);
+        gridCanvas.getGraphicsContext2D().drawImage(viewImage, 0, 0);
     }
 
-    private void resetGrid() {
-        // Reset the grid data to empty
-        for (int row = 0; row < GRID_SIZE; row++) {
-            for (int col = 0; col < GRID_SIZE; col++) {
-                gridData[row][col] = 0; // Empty the grid
+    // The cell at a grid pixel position, -1 outside the grid or -2 on a cell's border line
+    private int cellAt(double pixel, boolean lines) {
+        int cell = (int) Math.floor(pixel / cellSize);
+        if (pixel < 0 || cell >= GRID_SIZE) {
+            return -1;
+        }
+        if (lines) {
+            double inCell = pixel - cell * cellSize;
+            if (inCell < 1 || inCell >= cellSize - 1) {
+                return -2;
             }
         }
+        return cell;
+    }
+
+    private void updateGridSize(Canvas canvas, Scene scene) {
+        double availableWidth = scene.getWidth() - 200 - PADDING;
+        double availableHeight = scene.getHeight() - 3 * PADDING;
+        double gridSize = Math.max(1, Math.min(availableWidth, availableHeight));
+
+        boolean fitted = cellSize <= minCellSize(); // Still showing the whole grid
+        canvas.setWidth(gridSize);
+        canvas.setHeight(gridSize);
 
-        // Reset the visual grid by resetting each cell color
-        for (int i = 0; i < gridPane.getChildren().size(); i++) {
-            Rectangle cell = (Rectangle) gridPane.getChildren().get(i);
-            cell.setFill(Color.BLACK);
+        if (fitted) {
+            fitGridToView();
+        } else {
+            clampView();
+            drawGrid();
         }
+    }
+
+    private void resetGrid() {
+        // Reset the grid data to empty
+        Arrays.fill(gridData, (byte) 0);
+        connectivity.rebuild();
+
+        // Redraw the empty grid
+        drawGrid();
 
         // Reset start point flag
         startPointPlaced = false;
+        updatePathLabel();
     }
 
     
@@ -364,95 +755,31 @@ public class LevelCreator {
      * 
      * It does not matter if there are multiple end points but only one is accessible
      * 
-     * This uses a breadth-first search algorithm to identify if there is a path connecting points
+     * The editor keeps track of which tiles are connected while painting (see
+     * GridConnectivity), so none of this needs a search over the grid here
      */
     
-    private void exportGrid() {
-        // Check if there is at least one start point and one end point
-        boolean hasStartPoint = false;
-        boolean hasEndPoint = false;
-        
-        for (int row = 0; row < GRID_SIZE; row++) {
-            for (int col = 0; col < GRID_SIZE; col++) {
-                if (gridData[row][col] == 2) {  // Start point
-                    hasStartPoint = true;
-                }
-                if (gridData[row][col] == 3) {  // End point
-                    hasEndPoint = true;
-                }
-            }
-        }
-        
+    private void exportGrid(boolean binary) {
         // Show error if no start point or end point
-        if (!hasStartPoint) {
+        if (!connectivity.hasStart()) {
             showStatusMessage("Error: No start point on the map.", true);
             return;
         }
-        if (!hasEndPoint) {
+        if (!connectivity.hasGoal()) {
             showStatusMessage("Error: No end point on the map.", true);
             return;
         }
         
-        // Ensure there's a path between a start point and an end point
-        boolean pathExists = false;
-        outerLoop:
-        for (int row = 0; row < GRID_SIZE; row++) {
-            for (int col = 0; col < GRID_SIZE; col++) {
-                if (gridData[row][col] == 2) {  // Start point found, check path
-                    pathExists = bfs(row, col);
-                    if (pathExists) {
-                        break outerLoop;
-                    }
-                }
-            }
-        }
-        
         // Show error if no path exists between start and end points
-        if (!pathExists) {
+        if (!connectivity.isGoalReachable()) {
             showStatusMessage("Error: No path from start point to end point.", true);
             return;
         }
-        exportToXML();
-    }
-
-    // Helper method to perform BFS to check if there's a path from start to end
-    private boolean bfs(int startRow, int startCol) {
-        boolean[][] visited = new boolean[GRID_SIZE][GRID_SIZE];
-        LinkedList<int[]> queue = new LinkedList<>();
-        
-        // Directions: up, down, left, right
-        int[] dx = {0, 0, -1, 1};
-        int[] dy = {-1, 1, 0, 0};
-        
-        // Start from the given start position
-        queue.add(new int[]{startRow, startCol});
-        visited[startRow][startCol] = true;
-        
-        while (!queue.isEmpty()) {
-            int[] current = queue.poll();
-            int x = current[0], y = current[1];
-            
-            // Check for end point
-            if (gridData[x][y] == 3) {
-                return true;
-            }
-            
-            // Explore the neighbors (up, down, left, right)
-            for (int i = 0; i < 4; i++) {
-                int newX = x + dx[i];
-                int newY = y + dy[i];
-                
-                // Check boundaries and if cell is empty or an end point
-                if (newX >= 0 && newX < GRID_SIZE && newY >= 0 && newY < GRID_SIZE) {
-                    if (!visited[newX][newY] && (gridData[newX][newY] == 0 || gridData[newX][newY] == 3)) {
-                        visited[newX][newY] = true;
-                        queue.add(new int[]{newX, newY});
-                    }
-                }
-            }
+        if (binary) {
+            exportToBinary();
+        } else {
+            exportToXML();
         }
-        
-        return false;
     }
     
     private void exportToXML() {
@@ -482,7 +809,7 @@ public class LevelCreator {
                 Element rowElement = doc.createElement("row");
                 StringBuilder rowData = new StringBuilder();
                 for (int col = 0; col < GRID_SIZE; col++) {
-                    rowData.append(gridData[row][col]).append(" ");
+                    rowData.append(gridData[row * GRID_SIZE + col]).append(" ");
                 }
                 rowElement.appendChild(doc.createTextNode(rowData.toString().trim()));
                 mapDataElement.appendChild(rowElement);
@@ -504,6 +831,40 @@ public class LevelCreator {
         }
     }
     
+    // Write the level as a binary .lvl file, padded with the same wall border the xml loader adds
+    private void exportToBinary() {
+        try {
+            int width = GRID_SIZE + 2;
+            int height = GRID_SIZE + 2;
+            byte[] tiles = new byte[width * height];
+            int startCol = 0;
+            int startRow = 0;
+
+            for (int row = 0; row < height; row++) {
+                for (int col = 0; col < width; col++) {
+                    if (row == 0 || col == 0 || row == height - 1 || col == width - 1) {
+                        tiles[row * width + col] = 1; // Outer walls
+                    } else {
+                        int tile = gridData[(row - 1) * GRID_SIZE + (col - 1)];
+                        tiles[row * width + col] = (byte) tile;
+                        if (tile == 2) {
+                            startCol = col;
+                            startRow = row;
+                        }
+                    }
+                }
+            }
+
+            String filePath = "src/main/resources/com/perseus/raycaster/LevelData" + LevelFile.EXTENSION;
+            LevelFile.write(Paths.get(filePath), tiles, width, height, Map.TILE_SIZE, startCol, startRow, playerRotation);
+
+            showStatusMessage("Exported to " + filePath, false);
+        } catch (Exception e) {
+            e.printStackTrace();
+            showStatusMessage("Error exporting binary level.", true);
+        }
+    }
+
     private void showStatusMessage(String message, boolean isError) {
         // Set the text color based on whether it's an error message
         statusLabel.setStyle(isError ? "-fx-text-fill: red; -fx-font-size: 14px;" : "-fx-text-fill: green; -fx-font-size: 14px;");
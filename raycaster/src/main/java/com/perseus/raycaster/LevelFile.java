@@ -0,0 +1,173 @@
+package com.perseus.raycaster;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/*
+ * Binary level format, meant for levels far too big for the xml format.
+ *
+ * Layout (big endian):
+ *   0  int    magic "RCLV"
+ *   4  int    format version
+ *   8  int    width in tiles (including the wall border)
+ *  12  int    height in tiles (including the wall border)
+ *  16  int    tile size in world units
+ *  20  int    start column
+ *  24  int    start row
+ *  28  double player angle in degrees (same as the xml)
+ *  36  ...    reserved, zero
+ *  64  byte[] tiles, row-major, one byte per tile
+ *
+ * Unlike the xml, the tiles are stored already padded, so a loaded Map can
+ * read them straight out of the memory-mapped file without copying. Levels
+ * too big for that are read a chunk at a time instead (see ChunkedMap).
+ */
+public class LevelFile {
+    public static final String EXTENSION = ".lvl";
+
+    private static final int MAGIC = 0x52434C56; // "RCLV"
+    private static final int VERSION = 1;
+    public static final int HEADER_SIZE = 64; // Where the tiles start
+
+    /*
+     * Levels with more tiles than this are played from a ChunkedMap, which
+     * reads the tiles in chunks as they are needed, instead of being mapped
+     * into memory whole (with a distance field on the heap the size of the
+     * level). Can be set with -Draycaster.chunkedTiles=n.
+     */
+    private static final long CHUNKED_TILES = Long.getLong("raycaster.chunkedTiles", 1L << 26);
+    private static final int CHUNK_CACHE = Integer.getInteger("raycaster.chunkCache", 1024); // Chunks kept
+
+    // Map the tiles into memory, or read them in chunks for huge levels, and build the level on top
+    public static Level load(Path path) throws IOException {
+        return load(path, true);
+    }
+
+    /*
+     * Same, but with mapped false the tiles are read onto the heap instead of
+     * being mapped, for when the file may be rewritten while the level is
+     * played (a mapping of a file that gets truncated can't be read anymore).
+     */
+    public static Level load(Path path, boolean mapped) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE) {
+                throw new IOException(path + " is too small to be a level file");
+            }
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (header.hasRemaining()) {
+                if (channel.read(header, header.position()) < 0) {
+                    throw new IOException(path + " is too small to be a level file");
+                }
+            }
+
+            int magic = header.getInt(0);
+            int version = header.getInt(4);
+            if (magic != MAGIC) {
+                throw new IOException(path + " is not a level file");
+            }
+            if (version != VERSION) {
+                throw new IOException(path + " has unsupported level format version " + version);
+            }
+
+            int width = header.getInt(8);
+            int height = header.getInt(12);
+            int tileSize = header.getInt(16);
+            int startCol = header.getInt(20);
+            int startRow = header.getInt(24);
+            double playerAngle = header.getDouble(28);
+
+            long tileCount = (long) width * height;
+            if (width <= 0 || height <= 0 || HEADER_SIZE + tileCount != size) {
+                throw new IOException(path + " has a tile section that doesn't match its " + width + "x" + height
+                        + " header");
+            }
+
+            Map map;
+            if (tileCount > CHUNKED_TILES || tileCount > Integer.MAX_VALUE) { // One mapping can't go past 2 GB
+                ChunkedMap chunked = new ChunkedMap(path, HEADER_SIZE, width, height, tileSize, CHUNK_CACHE);
+                try {
+                    chunked.loadAround(startCol, startRow, 1);
+                } catch (IOException | RuntimeException e) {
+                    chunked.close(); // Stops its loader thread and closes its own channel
+                    throw e;
+                }
+                map = chunked;
+            } else if (mapped) {
+                // The mapping stays valid after the channel is closed
+                MappedByteBuffer tiles = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, tileCount);
+                map = new Map(tiles, width, height, tileSize);
+            } else {
+                ByteBuffer tiles = ByteBuffer.allocate((int) tileCount);
+                while (tiles.hasRemaining()) {
+                    if (channel.read(tiles, HEADER_SIZE + tiles.position()) < 0) {
+                        throw new IOException(path + " ends before its last tile");
+                    }
+                }
+                map = new Map(tiles, width, height, tileSize);
+            }
+            return new Level(map, startCol, startRow, Math.toRadians(playerAngle));
+        }
+    }
+
+    // Write an already padded tile array
+    public static void write(Path path, byte[] tiles, int width, int height, int tileSize, int startCol,
+            int startRow, double playerAngleDegrees) throws IOException {
+        if (tiles.length != width * height) {
+            throw new IllegalArgumentException("Expected " + (width * height) + " tiles but got " + tiles.length);
+        }
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeHeader(channel, width, height, tileSize, startCol, startRow, playerAngleDegrees);
+            ByteBuffer body = ByteBuffer.wrap(tiles);
+            long position = HEADER_SIZE;
+            while (body.hasRemaining()) {
+                position += channel.write(body, position);
+            }
+        }
+    }
+
+    /*
+     * Write just the header, at the start of the file. For levels whose tiles
+     * are written by the caller, from HEADER_SIZE on, because they are too big
+     * to be held in one array (see LevelGenerator). The header can be written
+     * after the tiles.
+     */
+    public static void writeHeader(FileChannel channel, int width, int height, int tileSize, int startCol,
+            int startRow, double playerAngleDegrees) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC);
+        header.putInt(VERSION);
+        header.putInt(width);
+        header.putInt(height);
+        header.putInt(tileSize);
+        header.putInt(startCol);
+        header.putInt(startRow);
+        header.putDouble(playerAngleDegrees);
+        header.clear(); // Write the whole header including the reserved bytes
+        while (header.hasRemaining()) {
+            channel.write(header, header.position());
+        }
+    }
+
+    // Write a loaded level, for example to convert an xml level
+    public static void write(Path path, Level level) throws IOException {
+        Map map = level.getMap();
+        int width = map.getWidth();
+        int height = map.getHeight();
+        byte[] tiles = new byte[width * height];
+        for (int row = 0; row < height; row++) {
+            for (int col = 0; col < width; col++) {
+                tiles[row * width + col] = (byte) map.getTile(col, row);
+            }
+        }
+        write(path, tiles, width, height, map.getTileSize(), level.getStartCol(), level.getStartRow(),
+                Math.toDegrees(level.getPlayerAngle()));
+    }
+}
@@ -0,0 +1,525 @@
+package com.perseus.raycaster;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+/*
+ * Generates levels instead of having them painted cell by cell: perfect mazes
+ * (exactly one way between any two places) or caves, from a seed, a size and
+ * a density, with the start and end points placed automatically.
+ *
+ * The level is cut into square regions that are generated independently and
+ * in parallel. Everything random about a region comes from the seed and the
+ * region's position, so a region comes out the same whatever order or thread
+ * it is made in, and a level can be generated a band of regions at a time and
+ * written out as it goes (see write), without ever holding all of it.
+ *
+ * The regions are stitched together along a random spanning tree of the
+ * regions: every pair of neighbouring regions joined in the tree gets one
+ * opening between them. Each maze region is itself a tree of corridors, so
+ * the whole maze is still perfect, and each cave region is made connected
+ * inside, so the whole cave is connected.
+ *
+ * The grid is the level editor's (0 empty, 1 wall, 2 start, 3 end point),
+ * without the outer walls a loaded level gets.
+ */
+public class LevelGenerator {
+    public enum Style {
+        MAZE, CAVE
+    }
+
+    public static final int REGION_SIZE = 256; // Tiles along each side of a region, even so maze cells line up
+    private static final int CAVE_STEPS = 4; // Smoothing passes turning noise into caves
+    private static final int MIN_POCKET = 16; // Smaller cave pockets are filled in instead of being connected
+
+    private final Style style;
+    private final int size;
+    private final long seed;
+    private final double density;
+    private final int regionsX; // Regions along each side
+    private final boolean[] joinedRight; // Per region, whether it opens into the region to its right
+    private final boolean[] joinedDown; // And into the one below it
+
+    private int startCol = -1;
+    private int startRow = -1;
+    private int endCol = -1;
+    private int endRow = -1;
+
+    /*
+     * A size x size level. density is what share of the walls between maze
+     * cells is kept (1 for a perfect maze, less knocks extra holes in it for
+     * loops), or for caves how likely every tile is to start out as rock
+     * before smoothing (about 0.45 gives caves, much less opens them up, much
+     * more closes them down to the tunnels joining the regions).
+     */
+    public LevelGenerator(Style style, int size, long seed, double density) {
+        if (size < 3) {
+            throw new IllegalArgumentException("A generated level needs at least 3 x 3 tiles, not " + size);
+        }
+        this.style = style;
+        this.size = size;
+        this.seed = seed;
+        this.density = Math.max(0, Math.min(1, density));
+        this.regionsX = (size + REGION_SIZE - 1) / REGION_SIZE;
+        this.joinedRight = new boolean[regionsX * regionsX];
+        this.joinedDown = new boolean[regionsX * regionsX];
+        joinRegions();
+    }
+
+    // The whole grid, row by row
+    public byte[] generate() {
+        byte[] grid = new byte[size * size];
+        for (int regionY = 0; regionY < regionsX; regionY++) {
+            byte[][] band = generateBand(regionY);
+            int top = regionY * REGION_SIZE;
+            for (int regionX = 0; regionX < regionsX; regionX++) {
+                int left = regionX * REGION_SIZE;
+                int width = regionWidth(regionX);
+                for (int row = 0; row < regionWidth(regionY); row++) {
+                    System.arraycopy(band[regionX], row * width, grid, (top + row) * size + left, width);
+                }
+            }
+        }
+        return grid;
+    }
+
+    /*
+     * Generate the level straight into a level file, a band of regions at a
+     * time, with the ring of outer walls a loaded level has. Only one band is
+     * held in memory, so the level can be far bigger than the heap.
+     *
+     * The level is written to a temporary file next to path and moved over
+     * it when complete, so a game playing or watching the old file never
+     * sees it half written.
+     */
+    public void write(Path path, int tileSize, double playerAngleDegrees) throws IOException {
+        int width = size + 2;
+        Path directory = path.toAbsolutePath().getParent();
+        Path temporary = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+                byte[] line = new byte[width];
+                long position = LevelFile.HEADER_SIZE;
+                Arrays.fill(line, (byte) 1);
+                position = writeLine(channel, line, position); // Top wall
+
+                for (int regionY = 0; regionY < regionsX; regionY++) {
+                    byte[][] band = generateBand(regionY);
+                    for (int row = 0; row < regionWidth(regionY); row++) {
+                        for (int regionX = 0; regionX < regionsX; regionX++) {
+                            int regionWidth = regionWidth(regionX);
+                            System.arraycopy(band[regionX], row * regionWidth, line, 1 + regionX * REGION_SIZE,
+                                    regionWidth);
+                        }
+                        position = writeLine(channel, line, position); // The walls at both ends stay in place
+                    }
+                }
+
+                Arrays.fill(line, (byte) 1);
+                writeLine(channel, line, position); // Bottom wall
+                // The start is known now, and so is the header
+                LevelFile.writeHeader(channel, width, width, tileSize, startCol + 1, startRow + 1,
+                        playerAngleDegrees);
+            }
+            Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temporary); // Only still there if writing failed
+        }
+    }
+
+    private static long writeLine(FileChannel channel, byte[] line, long position) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(line);
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+        return position;
+    }
+
+    // Position of the start and end points in the grid, known once they were generated
+    public int getStartCol() {
+        return startCol;
+    }
+
+    public int getStartRow() {
+        return startRow;
+    }
+
+    public int getEndCol() {
+        return endCol;
+    }
+
+    public int getEndRow() {
+        return endRow;
+    }
+
+    // One row of regions, generated in parallel, with the start and end points placed if they are in it
+    private byte[][] generateBand(int regionY) {
+        byte[][] band = new byte[regionsX][];
+        IntStream.range(0, regionsX).parallel().forEach(regionX -> band[regionX] = (style == Style.MAZE)
+                ? mazeRegion(regionX, regionY) : caveRegion(regionX, regionY));
+
+        if (regionY == 0) {
+            placeStart(band[0]);
+        }
+        if (regionY == regionsX - 1) {
+            placeEnd(band[regionsX - 1], regionsX - 1);
+        }
+        return band;
+    }
+
+    private int regionWidth(int region) {
+        return Math.min(REGION_SIZE, size - region * REGION_SIZE);
+    }
+
+    /*
+     * Pick which neighbouring regions open into each other: a random spanning
+     * tree of the regions, grown from the first one with a depth first walk.
+     */
+    private void joinRegions() {
+        int regions = regionsX * regionsX;
+        Random random = new Random(seed);
+        boolean[] visited = new boolean[regions];
+        int[] stack = new int[regions];
+        int depth = 0;
+        stack[depth++] = 0;
+        visited[0] = true;
+        int[] options = new int[4];
+        while (depth > 0) {
+            int region = stack[depth - 1];
+            int x = region % regionsX;
+            int y = region / regionsX;
+            int count = 0;
+            if (x > 0 && !visited[region - 1]) {
+                options[count++] = region - 1;
+            }
+            if (x < regionsX - 1 && !visited[region + 1]) {
+                options[count++] = region + 1;
+            }
+            if (y > 0 && !visited[region - regionsX]) {
+                options[count++] = region - regionsX;
+            }
+            if (y < regionsX - 1 && !visited[region + regionsX]) {
+                options[count++] = region + regionsX;
+            }
+            if (count == 0) {
+                depth--;
+                continue;
+            }
+            int next = options[random.nextInt(count)];
+            if (Math.abs(next - region) == 1) {
+                joinedRight[Math.min(next, region)] = true;
+            } else {
+                joinedDown[Math.min(next, region)] = true;
+            }
+            visited[next] = true;
+            stack[depth++] = next;
+        }
+    }
+
+    /*
+     * A maze region. Cells are the tiles at even positions and the tiles
+     * between them are walls until a corridor is carved through. A full
+     * region ends in a column and a row of such walls towards the regions to
+     * its right and below, which this region owns and opens where the regions
+     * are joined.
+     */
+    private byte[] mazeRegion(int regionX, int regionY) {
+        int width = regionWidth(regionX);
+        int height = regionWidth(regionY);
+        int cellsX = (width + 1) / 2;
+        int cellsY = (height + 1) / 2;
+        Random random = new Random(hash(seed, regionX, regionY, 0));
+        byte[] tiles = new byte[width * height];
+        Arrays.fill(tiles, (byte) 1);
+
+        // Depth first walk over the cells, carving the way it goes
+        boolean[] visited = new boolean[cellsX * cellsY];
+        int[] stack = new int[cellsX * cellsY];
+        int depth = 0;
+        stack[depth++] = 0;
+        visited[0] = true;
+        tiles[0] = 0;
+        int[] options = new int[4];
+        while (depth > 0) {
+            int cell = stack[depth - 1];
+            int x = cell % cellsX;
+            int y = cell / cellsX;
+            int count = 0;
+            if (x > 0 && !visited[cell - 1]) {
+                options[count++] = cell - 1;
+            }
+            if (x < cellsX - 1 && !visited[cell + 1]) {
+                options[count++] = cell + 1;
+            }
+            if (y > 0 && !visited[cell - cellsX]) {
+                options[count++] = cell - cellsX;
+            }
+            if (y < cellsY - 1 && !visited[cell + cellsX]) {
+                options[count++] = cell + cellsX;
+            }
+            if (count == 0) {
+                depth--;
+                continue;
+            }
+            int next = options[random.nextInt(count)];
+            int nextX = next % cellsX;
+            int nextY = next / cellsX;
+            tiles[(y + nextY) * width + x + nextX] = 0; // The wall between them, halfway in tiles
+            tiles[2 * nextY * width + 2 * nextX] = 0;
+            visited[next] = true;
+            stack[depth++] = next;
+        }
+
+        // The openings into the joined neighbours
+        int region = regionY * regionsX + regionX;
+        if (joinedRight[region]) {
+            int row = 2 * (int) Math.floorMod(hash(seed, regionX, regionY, 1), (long) cellsY);
+            tiles[row * width + width - 1] = 0;
+        }
+        if (joinedDown[region]) {
+            int col = 2 * (int) Math.floorMod(hash(seed, regionX, regionY, 2), (long) cellsX);
+            tiles[(height - 1) * width + col] = 0;
+        }
+
+        // Loops: knock out some of the remaining walls between two cells (never the pillars between four)
+        if (density < 1) {
+            boolean lastColumnShared = regionX < regionsX - 1;
+            boolean lastRowShared = regionY < regionsX - 1;
+            for (int row = 0; row < height; row++) {
+                for (int col = (row + 1) & 1; col < width; col += 2) {
+                    if ((col == width - 1 && (col & 1) == 1 && !lastColumnShared)
+                            || (row == height - 1 && (row & 1) == 1 && !lastRowShared)) {
+                        continue; // Against the outer wall, there is nothing on the other side
+                    }
+                    if (random.nextDouble() >= density) {
+                        tiles[row * width + col] = 0;
+                    }
+                }
+            }
+        }
+        return tiles;
+    }
+
+    /*
+     * A cave region: noise smoothed by a cellular automaton (a tile becomes
+     * rock when most of the 3 x 3 tiles around it are rock). The noise is a
+     * hash of the tile's position, so the region computes a margin of its
+     * neighbours' noise and smooths it exactly as they do, and the caves run
+     * on across region borders. Tunnels then join the region's hub (its
+     * middle) to the joined neighbours' hubs, and every pocket of the region
+     * is either joined to the hub or, if tiny, filled in.
+     */
+    private byte[] caveRegion(int regionX, int regionY) {
+        int width = regionWidth(regionX);
+        int height = regionWidth(regionY);
+        int left = regionX * REGION_SIZE;
+        int top = regionY * REGION_SIZE;
+
+        // Noise with a margin wide enough for every smoothing pass, outside the level is rock
+        int margin = CAVE_STEPS;
+        int outerWidth = width + 2 * margin;
+        int outerHeight = height + 2 * margin;
+        byte[] rock = new byte[outerWidth * outerHeight];
+        byte[] next = new byte[outerWidth * outerHeight];
+        for (int row = 0; row < outerHeight; row++) {
+            int y = top + row - margin;
+            for (int col = 0; col < outerWidth; col++) {
+                int x = left + col - margin;
+                boolean inside = x >= 0 && y >= 0 && x < size && y < size;
+                rock[row * outerWidth + col] = (byte) ((!inside || unit(hash(seed, x, y, 3)) < density) ? 1 : 0);
+            }
+        }
+        // Every pass leaves the outermost ring of the margin wrong, which is why the margin is there.
+        // The 3 x 3 counts are added up from sums of 3 tiles down each column
+        int[] columnSums = new int[outerWidth];
+        for (int step = 0; step < CAVE_STEPS; step++) {
+            for (int row = 1; row < outerHeight - 1; row++) {
+                int above = (row - 1) * outerWidth;
+                for (int col = 0; col < outerWidth; col++) {
+                    columnSums[col] = rock[above + col] + rock[above + outerWidth + col]
+                            + rock[above + 2 * outerWidth + col];
+                }
+                int offset = row * outerWidth;
+                for (int col = 1; col < outerWidth - 1; col++) {
+                    int count = columnSums[col - 1] + columnSums[col] + columnSums[col + 1];
+                    next[offset + col] = (byte) ((count >= 5) ? 1 : 0);
+                }
+            }
+            byte[] swap = rock;
+            rock = next;
+            next = swap;
+        }
+        byte[] tiles = new byte[width * height];
+        for (int row = 0; row < height; row++) {
+            System.arraycopy(rock, (row + margin) * outerWidth + margin, tiles, row * width, width);
+        }
+
+        // Tunnels from the hub to where the joined neighbours' tunnels come in
+        int hubX = width / 2;
+        int hubY = height / 2;
+        // At least two open tiles for the start and end (an edge region can be a single tile wide)
+        carve(tiles, width, Math.max(0, hubX - 1), hubY, Math.min(width - 1, hubX + 1), hubY);
+        int region = regionY * regionsX + regionX;
+        if (regionX < regionsX - 1 && joinedRight[region]) {
+            int row = (int) Math.floorMod(hash(seed, regionX, regionY, 1), (long) height);
+            carveTunnel(tiles, width, hubX, hubY, width - 1, row);
+        }
+        if (regionX > 0 && joinedRight[region - 1]) {
+            int row = (int) Math.floorMod(hash(seed, regionX - 1, regionY, 1), (long) height);
+            carveTunnel(tiles, width, hubX, hubY, 0, row);
+        }
+        if (regionY < regionsX - 1 && joinedDown[region]) {
+            int col = (int) Math.floorMod(hash(seed, regionX, regionY, 2), (long) width);
+            carveTunnel(tiles, width, hubX, hubY, col, height - 1);
+        }
+        if (regionY > 0 && joinedDown[region - regionsX]) {
+            int col = (int) Math.floorMod(hash(seed, regionX, regionY - 1, 2), (long) width);
+            carveTunnel(tiles, width, hubX, hubY, col, 0);
+        }
+
+        joinPockets(tiles, width, height, hubY * width + hubX);
+        return tiles;
+    }
+
+    // Open the tiles from the hub along its column to the row, then along the row to the column
+    private static void carveTunnel(byte[] tiles, int width, int hubX, int hubY, int col, int row) {
+        carve(tiles, width, hubX, hubY, hubX, row);
+        carve(tiles, width, hubX, row, col, row);
+    }
+
+    // Open a straight line of tiles
+    private static void carve(byte[] tiles, int width, int x0, int y0, int x1, int y1) {
+        for (int y = Math.min(y0, y1); y <= Math.max(y0, y1); y++) {
+            for (int x = Math.min(x0, x1); x <= Math.max(x0, x1); x++) {
+                tiles[y * width + x] = 0;
+            }
+        }
+    }
+
+    /*
+     * Find the region's pockets (groups of open tiles) with a flood fill from
+     * each, then fill in the tiny ones and tunnel from the others to the hub.
+     * The tunnels may cut through other pockets, which only joins them too.
+     * Tunnel tiles count as the hub's pocket, so they are never mistaken for
+     * a tiny pocket of their own.
+     */
+    private static void joinPockets(byte[] tiles, int width, int height, int hub) {
+        int[] pocket = new int[tiles.length]; // Pocket number per tile, 0 for not found yet
+        int[] queue = new int[tiles.length];
+        flood(tiles, width, height, hub, 1, pocket, queue);
+        int pockets = 1;
+        for (int start = 0; start < tiles.length; start++) {
+            if (tiles[start] != 0 || pocket[start] != 0) {
+                continue;
+            }
+            int number = ++pockets;
+            int count = flood(tiles, width, height, start, number, pocket, queue);
+            if (count < MIN_POCKET) {
+                for (int i = 0; i < count; i++) {
+                    tiles[queue[i]] = 1;
+                }
+            } else {
+                int hubX = hub % width;
+                int hubY = hub / width;
+                carveTunnel(tiles, width, hubX, hubY, start % width, start / width);
+                // Number the tunnel like the hub (same tiles carveTunnel opened)
+                markLine(pocket, width, hubX, hubY, hubX, start / width);
+                markLine(pocket, width, hubX, start / width, start % width, start / width);
+            }
+        }
+    }
+
+    private static void markLine(int[] pocket, int width, int x0, int y0, int x1, int y1) {
+        for (int y = Math.min(y0, y1); y <= Math.max(y0, y1); y++) {
+            for (int x = Math.min(x0, x1); x <= Math.max(x0, x1); x++) {
+                if (pocket[y * width + x] == 0) {
+                    pocket[y * width + x] = 1;
+                }
+            }
+        }
+    }
+
+    // Number the open tiles reachable from start, returns how many there are (left at the front of queue)
+    private static int flood(byte[] tiles, int width, int height, int start, int number, int[] pocket,
+            int[] queue) {
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = start;
+        pocket[start] = number;
+        while (head < tail) {
+            int index = queue[head++];
+            int x = index % width;
+            if (x > 0 && tiles[index - 1] == 0 && pocket[index - 1] == 0) {
+                pocket[index - 1] = number;
+                queue[tail++] = index - 1;
+            }
+            if (x < width - 1 && tiles[index + 1] == 0 && pocket[index + 1] == 0) {
+                pocket[index + 1] = number;
+                queue[tail++] = index + 1;
+            }
+            if (index >= width && tiles[index - width] == 0 && pocket[index - width] == 0) {
+                pocket[index - width] = number;
+                queue[tail++] = index - width;
+            }
+            if (index < (height - 1) * width && tiles[index + width] == 0 && pocket[index + width] == 0) {
+                pocket[index + width] = number;
+                queue[tail++] = index + width;
+            }
+        }
+        return tail;
+    }
+
+    // The start goes on the open tile of the first region nearest to the level's top left corner
+    private void placeStart(byte[] tiles) {
+        int width = regionWidth(0);
+        int best = -1;
+        for (int i = 0; i < tiles.length; i++) {
+            if (tiles[i] == 0 && (best < 0 || i % width + i / width < best % width + best / width)) {
+                best = i;
+            }
+        }
+        tiles[best] = 2;
+        startCol = best % width;
+        startRow = best / width;
+    }
+
+    /*
+     * The end point goes on the open tile of the last region nearest to the
+     * level's bottom right corner. Every open tile of a region can be reached
+     * from every other, so the end can be reached from the start.
+     */
+    private void placeEnd(byte[] tiles, int region) {
+        int width = regionWidth(region);
+        int best = -1;
+        for (int i = 0; i < tiles.length; i++) {
+            if (tiles[i] == 0 && (best < 0 || i % width + i / width > best % width + best / width)) {
+                best = i;
+            }
+        }
+        tiles[best] = 3;
+        int offset = region * REGION_SIZE;
+        endCol = offset + best % width;
+        endRow = offset + best / width;
+    }
+
+    // Mixes the seed and three numbers into 64 well spread bits (the SplitMix64 finalizer)
+    private static long hash(long seed, long a, long b, long c) {
+        long h = seed ^ (a * 0x9E3779B97F4A7C15L) ^ (b * 0xC2B2AE3D27D4EB4FL) ^ (c * 0x165667B19E3779F9L);
+        h = (h ^ (h >>> 30)) * 0xBF58476D1CE4E5B9L;
+        h = (h ^ (h >>> 27)) * 0x94D049BB133111EBL;
+        return h ^ (h >>> 31);
+    }
+
+    // A hash as a number in [0, 1)
+    private static double unit(long hash) {
+        return (hash >>> 11) * 0x1.0p-53;
+    }
+}
@@ -0,0 +1,157 @@
+package com.perseus.raycaster;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/*
+ * Reads the level files written by the LevelCreator. Binary .lvl files are
+ * handed to LevelFile, everything else is read as level xml. The map is
+ * padded with a ring of walls so rays and the player can never leave it.
+ *
+ * The file is streamed (StAX) instead of being built into a DOM first: every
+ * <row> is read once, its numbers are parsed straight into the padded tile
+ * array, and nothing else about the document is kept around.
+ */
+public class LevelLoader {
+
+    public static Level load(File file) throws Exception {
+        return load(file, true);
+    }
+
+    // With mapped false a binary level is read onto the heap instead (see LevelFile)
+    public static Level load(File file, boolean mapped) throws Exception {
+        if (file.getName().endsWith(LevelFile.EXTENSION)) {
+            return LevelFile.load(file.toPath(), mapped);
+        }
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+            return load(in);
+        }
+    }
+
+    public static Level load(InputStream in) throws Exception {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+
+        XMLStreamReader reader = factory.createXMLStreamReader(in);
+        try {
+            return parse(reader);
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static Level parse(XMLStreamReader reader) throws XMLStreamException {
+        double playerAngle = 0;
+        int gridSize = 0; // Only used to size the tile array up front
+
+        byte[] tiles = null; // Padded map, row by row, including the top border row
+        int width = 0; // Padded width
+        int rows = 0; // Rows read so far (without padding)
+        int startCol = 0;
+        int startRow = 0;
+
+        while (reader.hasNext()) {
+            if (reader.next() != XMLStreamConstants.START_ELEMENT) {
+                continue;
+            }
+
+            switch (reader.getLocalName()) {
+            case "gridSize":
+                gridSize = Integer.parseInt(reader.getElementText().trim());
+                break;
+            case "playerAngle":
+                playerAngle = Math.toRadians(Double.parseDouble(reader.getElementText().trim()));
+                break;
+            case "row":
+                String text = reader.getElementText();
+
+                if (tiles == null) {
+                    // The first row decides the width, the grid size how many rows to expect
+                    width = countValues(text) + 2;
+                    tiles = new byte[width * (Math.max(gridSize, 1) + 2)];
+                    Arrays.fill(tiles, 0, width, (byte) 1); // Top border
+                }
+
+                int offset = (rows + 1) * width;
+                if (offset + 2 * width > tiles.length) {
+                    tiles = Arrays.copyOf(tiles, tiles.length * 2); // More rows than the grid size said
+                }
+
+                tiles[offset] = 1; // Left border
+                tiles[offset + width - 1] = 1; // Right border
+                int start = parseRow(text, tiles, offset + 1, width - 2, rows);
+                if (start >= 0) {
+                    // Detect player start point (value 2)
+                    startCol = start + 1;
+                    startRow = rows + 1;
+                }
+                rows++;
+                break;
+            default:
+                break;
+            }
+        }
+
+        if (tiles == null) {
+            throw new XMLStreamException("Level has no map rows");
+        }
+
+        int height = rows + 2;
+        if (tiles.length != width * height) {
+            tiles = Arrays.copyOf(tiles, width * height);
+        }
+        Arrays.fill(tiles, (height - 1) * width, height * width, (byte) 1); // Bottom border
+
+        return new Level(new Map(tiles, width, height), startCol, startRow, playerAngle);
+    }
+
+    private static int countValues(String text) {
+        int count = 0;
+        boolean inValue = false;
+        for (int i = 0; i < text.length(); i++) {
+            boolean digit = Character.isDigit(text.charAt(i));
+            if (digit && !inValue) {
+                count++;
+            }
+            inValue = digit;
+        }
+        return count;
+    }
+
+    // Parse the space separated numbers of one row into tiles[offset...]. Returns the column of
+    // the start point in this row or -1
+    private static int parseRow(String text, byte[] tiles, int offset, int expected, int row)
+            throws XMLStreamException {
+        int col = 0;
+        int value = -1;
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            char c = (i < text.length()) ? text.charAt(i) : ' ';
+            if (c >= '0' && c <= '9') {
+                value = (value < 0 ? 0 : value * 10) + (c - '0');
+            } else if (value >= 0) {
+                if (col >= expected) {
+                    throw new XMLStreamException("Row " + row + " has more than " + expected + " tiles");
+                }
+                if (value == 2) {
+                    start = col;
+                }
+                tiles[offset + col++] = (byte) value;
+                value = -1;
+            }
+        }
+        if (col != expected) {
+            throw new XMLStreamException("Row " + row + " has " + col + " tiles, expected " + expected);
+        }
+        return start;
+    }
+}
@@ -0,0 +1,276 @@
+package com.perseus.raycaster;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/*
+ * The levels that can be played, in order, and loading them off the FX
+ * thread.
+ *
+ * The levels are the .xml and .lvl files of a directory (by default the one
+ * the LevelCreator exports to, set with -Draycaster.levelDir=dir), sorted by
+ * name. When a level exists in both formats the file written last is used,
+ * like the LevelCreator's two export buttons expect. If the directory has no
+ * levels, for example when the game runs from its jar, the level bundled on
+ * the classpath is played instead.
+ *
+ * Levels are parsed on a small worker pool and handed out as futures, so the
+ * game can keep drawing (a progress screen) while one loads and can parse the
+ * next level while the current one is played. A level that was requested
+ * once is kept until another level is requested, so asking again for a
+ * preloaded level finishes immediately.
+ */
+public class LevelRepository {
+    public static final String EXPORT_DIRECTORY = "src/main/resources/com/perseus/raycaster";
+    private static final String BUNDLED_LEVEL = "/com/perseus/raycaster/LevelData.xml";
+
+    // One playable level: a name in the level directory, or the bundled resource if directory is null
+    public static final class Entry {
+        private final String name;
+        private final File directory;
+
+        private Entry(String name, File directory) {
+            this.name = name;
+            this.directory = directory;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        // The directory the level is read from, null for the bundled level
+        public File getDirectory() {
+            return directory;
+        }
+
+        // The level's file, of its two formats the one written last. Null for the bundled level
+        public File getFile() {
+            if (directory == null) {
+                return null;
+            }
+            File xmlFile = new File(directory, name + ".xml");
+            File binaryFile = new File(directory, name + LevelFile.EXTENSION);
+            boolean useBinary = binaryFile.exists()
+                    && (!xmlFile.exists() || binaryFile.lastModified() > xmlFile.lastModified());
+            return useBinary ? binaryFile : xmlFile;
+        }
+    }
+
+    private final List<Entry> entries;
+    private final boolean mapped;
+    private final ExecutorService pool;
+    private final ConcurrentHashMap<Integer, CompletableFuture<Level>> loads = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Integer, Progress> progress = new ConcurrentHashMap<>();
+
+    /*
+     * Index the levels in directory. With mapped false binary levels are read
+     * onto the heap instead of being memory-mapped (see LevelFile).
+     */
+    public LevelRepository(File directory, boolean mapped) {
+        this.entries = index(directory);
+        this.mapped = mapped;
+        this.pool = Executors.newFixedThreadPool(2, runnable -> {
+            Thread thread = new Thread(runnable, "level-loader");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // The repository for -Draycaster.levelDir, or the LevelCreator's export directory
+    public static LevelRepository create(boolean mapped) {
+        return new LevelRepository(new File(System.getProperty("raycaster.levelDir", EXPORT_DIRECTORY)), mapped);
+    }
+
+    private static List<Entry> index(File directory) {
+        // Sorted and without duplicates, a level in both formats is one entry
+        TreeSet<String> names = new TreeSet<>();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.isFile() && isLevelFile(file)) {
+                    String fileName = file.getName();
+                    names.add(fileName.substring(0, fileName.lastIndexOf('.')));
+                }
+            }
+        }
+
+        List<Entry> entries = new ArrayList<>();
+        for (String name : names) {
+            entries.add(new Entry(name, directory));
+        }
+        if (entries.isEmpty()) {
+            entries.add(new Entry("LevelData", null));
+        }
+        return Collections.unmodifiableList(entries);
+    }
+
+    // Binary levels by their extension, xml files only if they are levels (not e.g. fxml layouts)
+    private static boolean isLevelFile(File file) {
+        String name = file.getName();
+        if (name.endsWith(LevelFile.EXTENSION)) {
+            return true;
+        }
+        if (!name.endsWith(".xml")) {
+            return false;
+        }
+        byte[] head = new byte[256];
+        try (InputStream in = new FileInputStream(file)) {
+            int read = in.readNBytes(head, 0, head.length);
+            return new String(head, 0, read, StandardCharsets.UTF_8).contains("<level");
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /*
+     * The level at index, parsed on the worker pool. Forgets every other
+     * level except the one after it, which is what a preload asks for.
+     */
+    public CompletableFuture<Level> load(int index) {
+        CompletableFuture<Level> previous = loads.get(index);
+        if (previous != null && previous.isCompletedExceptionally()) {
+            loads.remove(index, previous); // Try again rather than handing out the same failure
+        }
+        for (Integer other : loads.keySet()) {
+            if (other != index && other != index + 1) {
+                discard(loads.remove(other));
+            }
+        }
+        progress.keySet().removeIf(other -> other != index && other != index + 1);
+        return start(index);
+    }
+
+    // Start parsing the level at index, if there is one, so a later load of it is instant
+    public void preload(int index) {
+        if (index >= 0 && index < entries.size()) {
+            start(index);
+        }
+    }
+
+    private CompletableFuture<Level> start(int index) {
+        return loads.computeIfAbsent(index, key -> {
+            Progress tracker = new Progress();
+            progress.put(key, tracker);
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    return read(entries.get(key), tracker);
+                } catch (Exception e) {
+                    throw new RuntimeException("Could not load level " + entries.get(key).getName(), e);
+                }
+            }, pool);
+        });
+    }
+
+    // Parse a level again, bypassing what was loaded before, for example after its file changed
+    public Level reload(int index) throws Exception {
+        return read(entries.get(index), new Progress());
+    }
+
+    // How far loading the level at index is, from 0 to 1
+    public double getProgress(int index) {
+        Progress tracker = progress.get(index);
+        return (tracker == null) ? 0 : tracker.get();
+    }
+
+    private Level read(Entry entry, Progress tracker) throws Exception {
+        try {
+            File file = entry.getFile();
+            if (file == null) {
+                try (InputStream in = LevelRepository.class.getResourceAsStream(BUNDLED_LEVEL)) {
+                    if (in == null) {
+                        throw new IOException("No levels found and no bundled level on the classpath");
+                    }
+                    return LevelLoader.load(new BufferedInputStream(in));
+                }
+            }
+            if (file.getName().endsWith(LevelFile.EXTENSION)) {
+                return LevelFile.load(file.toPath(), mapped); // Mapping or one bulk read, no steps worth showing
+            }
+            tracker.total = file.length();
+            try (InputStream in = new BufferedInputStream(new CountingInputStream(new FileInputStream(file), tracker))) {
+                return LevelLoader.load(in);
+            }
+        } finally {
+            tracker.done = true;
+        }
+    }
+
+    // Also closes the maps of the loaded levels, including the one that was played (closing twice does nothing)
+    public void shutdown() {
+        for (CompletableFuture<Level> load : loads.values()) {
+            discard(load);
+        }
+        loads.clear();
+        progress.clear();
+        pool.shutdownNow();
+    }
+
+    // Close the map of a level that won't be played once it has loaded, a chunked map keeps its file open
+    private static void discard(CompletableFuture<Level> load) {
+        if (load != null) {
+            load.thenAccept(level -> level.getMap().close());
+        }
+    }
+
+    // Bytes of the level file read so far
+    private static final class Progress {
+        volatile long read;
+        volatile long total;
+        volatile boolean done;
+
+        double get() {
+            if (done) {
+                return 1;
+            }
+            return (total > 0) ? Math.min(1, read / (double) total) : 0;
+        }
+    }
+
+    private static final class CountingInputStream extends FilterInputStream {
+        private final Progress progress;
+
+        CountingInputStream(InputStream in, Progress progress) {
+            super(in);
+            this.progress = progress;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int value = super.read();
+            if (value >= 0) {
+                progress.read++;
+            }
+            return value;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                progress.read += read;
+            }
+            return read;
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.perseus.raycaster;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Watches the directory a level is played from and parses the level again on
+ * a background thread whenever one of its files changes, so edits show up in
+ * the running game (see Raycaster.applyLevelChange). The game only picks the
+ * parsed level up between ticks, the watcher never touches the level being
+ * played.
+ *
+ * The watcher also works out which tiles differ from the version the game
+ * has (a private copy of it: the previous parsed level, or the level parsed
+ * once more when watching starts), so all the game does with an edit is copy
+ * those tiles over. When the size changed, or there was no copy to compare
+ * with, the edit replaces the whole map, and the watcher keeps a copy of the
+ * new map so the edits after it are patched in place again.
+ *
+ * Saving a file usually fires several events in a row (truncate, write,
+ * touch), so parsing waits until the directory has been quiet for a moment.
+ * A file caught half written fails to parse and is simply parsed again on
+ * its next event.
+ */
+public class LevelWatcher {
+    private static final long QUIET_MILLIS = 100;
+
+    private final WatchService watchService;
+    private final Set<String> fileNames;
+    private final Callable<Level> loader;
+    private final Object lock = new Object();
+    private Map base; // A map the game's tiles match that nothing else changes, null if there isn't one
+    private Change changed; // Not taken by the game yet
+    private volatile boolean closed;
+
+    // Parse the level with loader whenever one of the named files in directory changes
+    public LevelWatcher(Path directory, Set<String> fileNames, Callable<Level> loader) throws IOException {
+        this.fileNames = fileNames;
+        this.loader = loader;
+        this.watchService = directory.getFileSystem().newWatchService();
+        directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+
+        Thread thread = new Thread(this::watch, "level-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // The most recently parsed version of the level if there is one that wasn't taken yet
+    public Change poll() {
+        synchronized (lock) {
+            Change change = changed;
+            if (change != null) {
+                changed = null;
+                // After taking the whole map the game changes it, so compare with the copy from then on
+                base = (change.getTiles() != null) ? change.getLevel().getMap() : change.baseline;
+            }
+            return change;
+        }
+    }
+
+    private void watch() {
+        try {
+            Map first = loader.call().getMap();
+            synchronized (lock) {
+                base = first;
+            }
+        } catch (Exception e) {
+            e.printStackTrace(); // The first edit replaces the whole map
+        }
+        try {
+            while (!closed) {
+                if (!isLevelChange(watchService.take())) {
+                    continue;
+                }
+                // Let the writer finish before parsing
+                WatchKey more;
+                while ((more = watchService.poll(QUIET_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+                    isLevelChange(more);
+                }
+                try {
+                    offer(loader.call());
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Closed, stop watching
+        }
+    }
+
+    // Compare with the version the game has and hand the result over, replacing any edit not taken yet
+    private void offer(Level parsed) {
+        while (true) {
+            Map from;
+            synchronized (lock) {
+                from = base;
+            }
+            TileChanges tiles = (from == null) ? null : TileChanges.between(from, parsed.getMap());
+            // A whole map goes to the game as it is, later edits are compared with a copy of it
+            Map baseline = (tiles == null && parsed.getMap().canChangeTiles()) ? parsed.getMap().copy() : null;
+            synchronized (lock) {
+                if (base == from) { // Otherwise the game took an edit meanwhile, compare again
+                    changed = new Change(parsed, tiles, baseline);
+                    return;
+                }
+            }
+        }
+    }
+
+    // Whether any of the key's events is about a level file. Resets the key for further events
+    private boolean isLevelChange(WatchKey key) {
+        boolean levelChange = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            Object context = event.context();
+            if (context instanceof Path && fileNames.contains(((Path) context).getFileName().toString())) {
+                levelChange = true;
+            }
+        }
+        key.reset();
+        return levelChange;
+    }
+
+    public void close() {
+        closed = true;
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // A parsed version of the level and how its tiles differ from the version the game has
+    public static final class Change {
+        private final Level level;
+        private final TileChanges tiles;
+        private final Map baseline; // Copy of the level's map when it replaces the game's, for the watcher
+
+        private Change(Level level, TileChanges tiles, Map baseline) {
+            this.level = level;
+            this.tiles = tiles;
+            this.baseline = baseline;
+        }
+
+        public Level getLevel() {
+            return level;
+        }
+
+        // The tiles to copy from the level's map, or null if its map replaces the game's
+        public TileChanges getTiles() {
+            return tiles;
+        }
+    }
+}
@@ -16,6 +16,8 @@ public class Main extends Application {
 
     @Override
     public void start(Stage primaryStage) {
+        // Decode all textures in the background while the menu is showing
+        TextureCache.preload();
 
         Text title = new Text("Raycaster v2");
         title.getStyleClass().add("title");
@@ -124,7 +126,10 @@ public class Main extends Application {
             "Play Level to play game",
             "Objective: Find goal tile in shortest time possible",
             "Controls: W, A, S, D",
-            "R to restart, F to Change Style, ESC to exit level"
+            "R to restart, F to Change Style, ESC to exit level",
+            "M to compare with the old ray marcher, P to toggle multi-core rendering",
+            "G to show goals as markers, T to toggle textured floors",
+            "F3 to show frame timings, V for dynamic resolution"
         };
 
         for (String message : helpMessages) {
@@ -1,42 +1,184 @@
 package com.perseus.raycaster;
 
+import java.nio.ByteBuffer;
+
 public class Map {
     public static final int TILE_SIZE = 100;
 
-    private final int[][] layout; 
+    /*
+     * Tiles are stored as one flat row-major run of bytes (a byte per tile instead
+     * of an int per tile in separate row arrays). The bytes either live in a
+     * plain array or directly in a memory-mapped level file (see LevelFile), in
+     * which case nothing is copied onto the heap. When the tile size is a power
+     * of two, world coordinates are turned into tile coordinates with a shift
+     * instead of a division.
+     *
+     * Every map also carries a distance field (see DistanceField): per tile, how
+     * many tiles away the nearest wall or goal is. It is built once when the map
+     * is created and lets rays jump across open areas.
+     */
+    private ByteBuffer tiles; // Replaced by a heap copy the first time a read-only buffer is changed
+    private final int width;
+    private final int height;
+    private final int tileSize;
+    private final int tileShift; // log2(tileSize), or -1 if tileSize is not a power of two
+    private final byte[] clearance; // Distance to the nearest wall or goal per tile, 0 on them
 
     public Map(int[][] layout) {
-        this.layout = layout;
+        this(flatten(layout), layout[0].length, layout.length, TILE_SIZE);
+    }
+
+    public Map(byte[] tiles, int width, int height) {
+        this(tiles, width, height, TILE_SIZE);
+    }
+
+    public Map(byte[] tiles, int width, int height, int tileSize) {
+        this(ByteBuffer.wrap(tiles), width, height, tileSize);
     }
-    
+
+    // Tiles are read from index 0 of the buffer, whatever its position
+    public Map(ByteBuffer tiles, int width, int height, int tileSize) {
+        if (tiles.capacity() != width * height) {
+            throw new IllegalArgumentException("Expected " + (width * height) + " tiles but got " + tiles.capacity());
+        }
+        if (tileSize <= 0) {
+            throw new IllegalArgumentException("Tile size must be positive: " + tileSize);
+        }
+        this.tiles = tiles;
+        this.width = width;
+        this.height = height;
+        this.tileSize = tileSize;
+        this.tileShift = (Integer.bitCount(tileSize) == 1) ? Integer.numberOfTrailingZeros(tileSize) : -1;
+        this.clearance = DistanceField.build(tiles, width, height);
+    }
+
+    // For maps that keep their tiles elsewhere (see ChunkedMap) and override the tile accessors
+    protected Map(int width, int height, int tileSize) {
+        if (tileSize <= 0) {
+            throw new IllegalArgumentException("Tile size must be positive: " + tileSize);
+        }
+        this.tiles = null;
+        this.width = width;
+        this.height = height;
+        this.tileSize = tileSize;
+        this.tileShift = (Integer.bitCount(tileSize) == 1) ? Integer.numberOfTrailingZeros(tileSize) : -1;
+        this.clearance = null;
+    }
+
+    private static byte[] flatten(int[][] layout) {
+        int width = layout[0].length;
+        byte[] tiles = new byte[layout.length * width];
+        for (int row = 0; row < layout.length; row++) {
+            for (int col = 0; col < width; col++) {
+                tiles[row * width + col] = (byte) layout[row][col];
+            }
+        }
+        return tiles;
+    }
+
     public boolean isWall(int x, int y) {
-        int col = x / TILE_SIZE;
-        int row = y / TILE_SIZE;
+        int col = toTile(x);
+        int row = toTile(y);
 
-        if (col < 0 || col >= layout[0].length || row < 0 || row >= layout.length) {
+        if (col < 0 || col >= width || row < 0 || row >= height) {
             return false;
         }
 
         // If the tile is 3 or 1
-        return layout[row][col]%2 == 1;
+        return (tiles.get(row * width + col) & 1) != 0;
     }
 
     public int getWidth() {
-        return layout[0].length;
+        return width;
     }
 
     public int getHeight() {
-        return layout.length;
+        return height;
     }
 
     public int getTile(int x, int y) {
-        if (x < 0 || y < 0 || x >= layout.length || y >= layout[0].length) {
+        if (x < 0 || y < 0 || x >= width || y >= height) {
             return -1;
         }
-        return layout[y][x]; 
+        return tiles.get(y * width + x);
+    }
+
+    /*
+     * Chebyshev distance in tiles from this tile to the nearest wall, goal or
+     * the edge of the map (0 on walls, goals and outside the map). Every tile
+     * closer than that to this one is open.
+     */
+    public int getClearance(int x, int y) {
+        if (x < 0 || y < 0 || x >= width || y >= height) {
+            return 0;
+        }
+        return clearance[y * width + x] & 0xFF;
     }
 
     public int getTileSize() {
-        return TILE_SIZE;
+        return tileSize;
+    }
+
+    // Whether copyTiles can change this map's tiles in place
+    public boolean canChangeTiles() {
+        return true;
+    }
+
+    // A copy with its own tiles on the heap, which later changes to either map don't affect
+    public Map copy() {
+        if (!canChangeTiles()) {
+            throw new IllegalStateException("The tiles of this map aren't held in memory");
+        }
+        byte[] copy = new byte[width * height];
+        tiles.duplicate().clear().get(copy);
+        return new Map(copy, width, height, tileSize);
+    }
+
+    /*
+     * Take over the listed tiles from a map of the same size, for example
+     * after the level file was edited, and update the distance field around
+     * them. Finding the tiles that changed is left to the caller (see
+     * TileChanges), this only touches those.
+     */
+    public void copyTiles(Map source, TileChanges changes) {
+        if (!canChangeTiles()) {
+            throw new IllegalStateException("The tiles of this map can't be changed in place");
+        }
+        if (source.getWidth() != width || source.getHeight() != height) {
+            throw new IllegalArgumentException("Expected a " + width + "x" + height + " map but got "
+                    + source.getWidth() + "x" + source.getHeight());
+        }
+        if (changes.getCount() == 0) {
+            return;
+        }
+        if (tiles.isReadOnly()) {
+            // Memory-mapped level file: copy it to the heap instead of writing to the file
+            ByteBuffer copy = ByteBuffer.allocate(width * height);
+            copy.put(tiles.duplicate().clear());
+            tiles = copy;
+        }
+        for (int i = 0; i < changes.getCount(); i++) {
+            int index = changes.getIndex(i);
+            tiles.put(index, (byte) source.getTile(index % width, index / width));
+        }
+        DistanceField.update(tiles, width, height, clearance,
+                changes.getMinX(), changes.getMinY(), changes.getMaxX(), changes.getMaxY());
+    }
+
+    // Tile column or row of a world coordinate
+    protected int toTile(int coordinate) {
+        return (tileShift >= 0) ? coordinate >> tileShift : coordinate / tileSize;
+    }
+
+    /*
+     * Called every tick with where the player is and which way it faces. A
+     * map that has all its tiles at hand ignores it; a map that loads them
+     * on demand uses it to fetch the tiles the player is about to see.
+     */
+    public void prefetch(double x, double y, double dirX, double dirY) {
+    }
+
+    // Release whatever the map holds besides its tiles, once it is no longer played
+    public void close() {
     }
 }
@@ -0,0 +1,356 @@
+package com.perseus.raycaster;
+
+import java.util.Arrays;
+
+/*
+ * Shortest walk from the start to the nearest goal, for the par time shown
+ * when a level is completed.
+ *
+ * The walk moves between the centers of open tiles in the 8 directions. A
+ * diagonal step is only allowed when both tiles beside it are open, since
+ * the player can't squeeze past the corner where two walls meet. Goals are
+ * walls the player touches, so the walk ends in a tile next to one and then
+ * goes the half tile to its face. Measured between centers the walk is a
+ * little longer than a player who cuts corners has to go, which is fine for
+ * a par.
+ *
+ * The search is A* with jump point search: on a grid where every step costs
+ * the same, the search only stops at tiles where the best route may turn
+ * (jump points) and runs straight past everything in between, so long
+ * corridors and open rooms cost a single node each.
+ *
+ * The tiles are first copied into a grid of flags with a border of walls
+ * around it, so the inner loops are array reads with no bounds checks, and
+ * a node is simply its index in that grid. The open list is a binary heap
+ * over primitive arrays and the closed set is a bit set, so a search on a
+ * 4096 x 4096 maze allocates a few arrays and no objects per node. A node
+ * carries its cost and parent in its heap entry rather than in a table on
+ * the side: the heuristic (octile distance) never drops by more than the
+ * cost of a step, so the first time a node is taken off the heap it has
+ * its lowest cost, and any later entry for it is simply skipped.
+ */
+public class PathSolver {
+    private static final double SQRT2 = Math.sqrt(2);
+    private static final int MAX_HEURISTIC_GOALS = 64; // With more goals, fall back to no heuristic (Dijkstra)
+
+    // Grid flags
+    private static final byte BLOCKED = 1; // Wall, goal or outside the map
+    private static final byte GOAL_SIDE = 2; // Open and next to the face of a goal
+    private static final byte GOAL = 4;
+
+    private final Map map;
+    private final int stride; // Width of the grid, the map's plus the border on both sides
+
+    private byte[] grid;
+
+    // Open list: a binary min-heap ordered by estimated total cost. A node can be in it
+    // more than once, by different routes; only the cheapest entry is expanded
+    private int[] heapNodes = new int[1024];
+    private int[] heapParents = new int[1024];
+    private double[] heapCosts = new double[1024]; // Cost so far
+    private double[] heapEstimates = new double[1024]; // Cost so far plus the heuristic
+    private int heapSize;
+
+    private long[] closed; // One bit per grid cell
+
+    private int[] goals = new int[0]; // For the heuristic, empty if there are too many
+    private int goalCount;
+
+    public PathSolver(Map map) {
+        this.map = map;
+        this.stride = map.getWidth() + 2;
+    }
+
+    // The shortest walk from the level's start to a goal in world units, or -1 if no goal can be reached
+    public static double shortestDistance(Level level) {
+        double tiles = new PathSolver(level.getMap()).solve(level.getStartCol(), level.getStartRow());
+        return (tiles < 0) ? -1 : tiles * level.getMap().getTileSize();
+    }
+
+    // The shortest walk from the tile to the face of the nearest goal, in tiles, or -1 if no goal can be reached
+    public double solve(int startCol, int startRow) {
+        buildGrid();
+        closed = new long[(grid.length + 63) >>> 6];
+        heapSize = 0;
+
+        int start = (startRow + 1) * stride + startCol + 1;
+        if (startCol < 0 || startCol >= map.getWidth() || startRow < 0 || startRow >= map.getHeight()
+                || (grid[start] & BLOCKED) != 0) {
+            return -1;
+        }
+        push(start, -1, 0);
+
+        while (heapSize > 0) {
+            int node = heapNodes[0];
+            int parent = heapParents[0];
+            double cost = heapCosts[0];
+            pop();
+            if (isClosed(node)) {
+                continue; // Reached before by a cheaper route
+            }
+            if ((grid[node] & GOAL_SIDE) != 0) {
+                return cost + 0.5;
+            }
+            close(node);
+            expand(node, parent, cost);
+        }
+        return -1;
+    }
+
+    /*
+     * Copy the map into the flag grid and find the goals for the heuristic
+     * (with a lot of them the heuristic would cost more than it saves).
+     */
+    private void buildGrid() {
+        int width = map.getWidth();
+        int height = map.getHeight();
+        byte[] grid = new byte[stride * (height + 2)];
+        this.grid = grid;
+        Arrays.fill(grid, BLOCKED);
+        goalCount = 0;
+        boolean tooManyGoals = false;
+        for (int row = 0; row < height; row++) {
+            int index = (row + 1) * stride + 1;
+            for (int col = 0; col < width; col++, index++) {
+                int tile = map.getTile(col, row);
+                if ((tile & 1) == 0) {
+                    grid[index] = 0;
+                } else if (tile == 3) {
+                    grid[index] = BLOCKED | GOAL;
+                    if (tooManyGoals) {
+                        continue;
+                    }
+                    if (goalCount == MAX_HEURISTIC_GOALS) {
+                        tooManyGoals = true;
+                    } else {
+                        if (goalCount == goals.length) {
+                            goals = Arrays.copyOf(goals, Math.max(8, goalCount * 2));
+                        }
+                        goals[goalCount++] = index;
+                    }
+                }
+            }
+        }
+        for (int index = stride; index < grid.length - stride; index++) {
+            if ((grid[index] & GOAL) != 0) {
+                markGoalSide(index - 1);
+                markGoalSide(index + 1);
+                markGoalSide(index - stride);
+                markGoalSide(index + stride);
+            }
+        }
+        if (tooManyGoals) {
+            goalCount = 0;
+        }
+    }
+
+    private void markGoalSide(int index) {
+        if (open(index)) {
+            grid[index] |= GOAL_SIDE;
+        }
+    }
+
+    // Octile distance to a tile next to the nearest goal, never more than the real walk
+    private double heuristic(int node) {
+        int col = node % stride;
+        int row = node / stride;
+        double best = (goalCount == 0) ? 1 : Double.MAX_VALUE;
+        for (int i = 0; i < goalCount; i++) {
+            best = Math.min(best, octile(Math.abs(goals[i] % stride - col), Math.abs(goals[i] / stride - row)));
+        }
+        return Math.max(0, best - 1);
+    }
+
+    private static double octile(int dx, int dy) {
+        return Math.max(dx, dy) + (SQRT2 - 1) * Math.min(dx, dy);
+    }
+
+    private boolean open(int node) {
+        return (grid[node] & BLOCKED) == 0;
+    }
+
+    /*
+     * Look in every direction the route through this node can continue in
+     * (all of them at the start, otherwise only the "natural" and "forced"
+     * ones given where it came from) and add the jump point found there.
+     */
+    private void expand(int node, int parent, double cost) {
+        if (parent < 0) {
+            for (int dy = -1; dy <= 1; dy++) {
+                for (int dx = -1; dx <= 1; dx++) {
+                    if ((dx != 0 || dy != 0) && open(node + dx + dy * stride)
+                            && (dx == 0 || dy == 0 || (open(node + dx) && open(node + dy * stride)))) {
+                        tryJump(node, dx, dy, cost);
+                    }
+                }
+            }
+            return;
+        }
+
+        int dx = Integer.signum(node % stride - parent % stride);
+        int dy = Integer.signum(node / stride - parent / stride);
+        if (dx != 0 && dy != 0) {
+            boolean vertical = open(node + dy * stride);
+            boolean horizontal = open(node + dx);
+            if (vertical) {
+                tryJump(node, 0, dy, cost);
+            }
+            if (horizontal) {
+                tryJump(node, dx, 0, cost);
+            }
+            if (vertical && horizontal) {
+                tryJump(node, dx, dy, cost);
+            }
+        } else if (dx != 0) {
+            boolean next = open(node + dx);
+            boolean below = open(node + stride);
+            boolean above = open(node - stride);
+            if (next) {
+                tryJump(node, dx, 0, cost);
+                if (below) {
+                    tryJump(node, dx, 1, cost);
+                }
+                if (above) {
+                    tryJump(node, dx, -1, cost);
+                }
+            }
+            if (below) {
+                tryJump(node, 0, 1, cost);
+            }
+            if (above) {
+                tryJump(node, 0, -1, cost);
+            }
+        } else {
+            boolean next = open(node + dy * stride);
+            boolean right = open(node + 1);
+            boolean left = open(node - 1);
+            if (next) {
+                tryJump(node, 0, dy, cost);
+                if (right) {
+                    tryJump(node, 1, dy, cost);
+                }
+                if (left) {
+                    tryJump(node, -1, dy, cost);
+                }
+            }
+            if (right) {
+                tryJump(node, 1, 0, cost);
+            }
+            if (left) {
+                tryJump(node, -1, 0, cost);
+            }
+        }
+    }
+
+    private void tryJump(int node, int dx, int dy, double cost) {
+        int jumpPoint = (dx != 0 && dy != 0) ? jumpDiagonal(node, dx, dy * stride)
+                : jumpStraight(node, dx + dy * stride, (dx != 0) ? stride : 1);
+        if (jumpPoint < 0 || isClosed(jumpPoint)) {
+            return;
+        }
+        push(jumpPoint, node, cost + octile(Math.abs(jumpPoint % stride - node % stride),
+                Math.abs(jumpPoint / stride - node / stride)));
+    }
+
+    /*
+     * Run from node in steps of step until a tile where the route could turn:
+     * one next to a goal, or an open tile beside the run (side is the step
+     * across it) whose approach was blocked one step back, so the only good
+     * way there is through this tile. Returns that tile's node, or -1 if the
+     * run ends at a wall.
+     */
+    private int jumpStraight(int node, int step, int side) {
+        while (true) {
+            node += step;
+            byte flags = grid[node];
+            if ((flags & BLOCKED) != 0) {
+                return -1;
+            }
+            if ((flags & GOAL_SIDE) != 0
+                    || (open(node + side) && !open(node - step + side))
+                    || (open(node - side) && !open(node - step - side))) {
+                return node;
+            }
+        }
+    }
+
+    // Run diagonally, stopping where one of the two straight runs from a tile finds a jump point
+    private int jumpDiagonal(int node, int stepX, int stepY) {
+        while (true) {
+            node += stepX + stepY;
+            byte flags = grid[node];
+            if ((flags & BLOCKED) != 0) {
+                return -1;
+            }
+            if ((flags & GOAL_SIDE) != 0 || jumpStraight(node, stepX, stride) >= 0
+                    || jumpStraight(node, stepY, 1) >= 0) {
+                return node;
+            }
+            if (!open(node + stepX) || !open(node + stepY)) {
+                return -1; // Can't squeeze past the corner
+            }
+        }
+    }
+
+    private boolean isClosed(int node) {
+        return (closed[node >>> 6] & (1L << node)) != 0;
+    }
+
+    private void close(int node) {
+        closed[node >>> 6] |= 1L << node;
+    }
+    // Heap
+
+    private void push(int node, int parent, double cost) {
+        if (heapSize == heapNodes.length) {
+            heapNodes = Arrays.copyOf(heapNodes, heapSize * 2);
+            heapParents = Arrays.copyOf(heapParents, heapSize * 2);
+            heapCosts = Arrays.copyOf(heapCosts, heapSize * 2);
+            heapEstimates = Arrays.copyOf(heapEstimates, heapSize * 2);
+        }
+        double estimate = cost + heuristic(node);
+        int i = heapSize++;
+        while (i > 0) {
+            int up = (i - 1) >>> 1;
+            if (heapEstimates[up] <= estimate) {
+                break;
+            }
+            move(up, i);
+            i = up;
+        }
+        heapNodes[i] = node;
+        heapParents[i] = parent;
+        heapCosts[i] = cost;
+        heapEstimates[i] = estimate;
+    }
+
+    // Remove the top entry
+    private void pop() {
+        heapSize--;
+        int last = heapSize;
+        double estimate = heapEstimates[last];
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= heapSize) {
+                break;
+            }
+            if (child + 1 < heapSize && heapEstimates[child + 1] < heapEstimates[child]) {
+                child++;
+            }
+            if (heapEstimates[child] >= estimate) {
+                break;
+            }
+            move(child, i);
+            i = child;
+        }
+        move(last, i);
+    }
+
+    private void move(int from, int to) {
+        heapNodes[to] = heapNodes[from];
+        heapParents[to] = heapParents[from];
+        heapCosts[to] = heapCosts[from];
+        heapEstimates[to] = heapEstimates[from];
+    }
+}
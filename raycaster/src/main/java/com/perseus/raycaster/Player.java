@@ -1,70 +1,202 @@
 package com.perseus.raycaster;
 public class Player {
+   // Movement keys held during a tick, as bits of the input passed to update
+   public static final int FORWARD = 1;
+   public static final int BACKWARD = 2;
+   public static final int TURN_LEFT = 4;
+   public static final int TURN_RIGHT = 8;
+   
    private double x, y; // Player's position
-   private double angle; // Player's viewing angle
+   private double angle; // Player's viewing angle, always kept within [0, 2*PI)
+   private double angleCos, angleSin; // Only recalculated when the player turns
    private final double speed = 2; // Movement speed
    private final double rotationSpeed = Math.toRadians(1); // Rotation speed
    private final int characterPadding = 5;
    private double animationTime = 0; // Time to control walking animation (sine wave y component)
    private final double animationSpeed = 0.15; // Controls the speed of the animation
-   private boolean gameOver = false;
+   private boolean reachedGoal = false; // Set when the player first touches a goal tile
+   
+   // State at the start of the current simulation tick, so frames drawn between ticks
+   // can show the player part way between the two (see interpolate)
+   private double previousX, previousY, previousAngle, previousAnimationTime;
    
    public Player(double x, double y, double angle) {
        this.x = x;
        this.y = y;
-       this.angle = angle;
+       setAngle(angle);
+       beginTick();
    }
-   public void moveForward(Map map) {
-       double newX = x + Math.cos(angle) * speed;
-       double newY = y + Math.sin(angle) * speed;
+   
+   // Remember where the player is before the next tick moves it
+   public void beginTick() {
+       previousX = x;
+       previousY = y;
+       previousAngle = angle;
+       previousAnimationTime = animationTime;
+   }
+   
+   // Put the view player alpha (0..1) of the way from the previous tick's state to this one
+   public void interpolate(Player view, double alpha) {
+       view.x = previousX + (x - previousX) * alpha;
+       view.y = previousY + (y - previousY) * alpha;
+       view.animationTime = previousAnimationTime + (animationTime - previousAnimationTime) * alpha;
        
-       if (!isColliding(newX, y, map)) {
-           this.x = newX;
+       // Turn the short way round when the angle wrapped past 0 / 2*PI during the tick
+       double turn = angle - previousAngle;
+       if (turn > Math.PI) {
+           turn -= 2 * Math.PI;
+       } else if (turn < -Math.PI) {
+           turn += 2 * Math.PI;
+       }
+       view.setAngle(previousAngle + turn * alpha);
+   }
+   // One simulation tick with the given movement keys held. Movement only depends on
+   // the map and this input, so replaying the same inputs gives the same result
+   public void update(Map map, int input) {
+       if ((input & FORWARD) != 0) {
+           moveForward(map);
+       }
+       if ((input & BACKWARD) != 0) {
+           moveBackward(map);
        }
-       if (!isColliding(x, newY, map)) {
-           this.y = newY;
+       if ((input & TURN_LEFT) != 0) {
+           rotateLeft();
+       }
+       if ((input & TURN_RIGHT) != 0) {
+           rotateRight();
        }
-    	   animationTime += animationSpeed;
+   }
+   
+   public void moveForward(Map map) {
+       move(map, angleCos * speed, angleSin * speed);
+       animationTime += animationSpeed;
    }
    
    public void moveBackward(Map map) {
-       double newX = x - Math.cos(angle) * speed;
-       double newY = y - Math.sin(angle) * speed;
-       
-       if (!isColliding(newX, y, map)) {
-           this.x = newX;
-       }
-       if (!isColliding(x, newY, map)) {
-           this.y = newY;
-       }
-    	   animationTime += animationSpeed;
+       move(map, -angleCos * speed, -angleSin * speed);
+       animationTime += animationSpeed;
    }
    
    public double getAnimationOffset() {
 	   return Math.sin(animationTime/2) * 10;
    }
    
-   private boolean isColliding(double testX, double testY, Map map) {
-       // Check for collisions using padding
-	   
-	   // If colliding with end point
-	   gameOver = (map.getTile(((int) testX + characterPadding)/100, (int) testY/100) == 3 ||
-		       map.getTile(((int) testX - characterPadding)/100, (int) testY/100) == 3 ||
-		       map.getTile((int) testX/100, ((int) testY + characterPadding)/100) == 3 ||
-		       map.getTile((int) testX/100, ((int) testY - characterPadding)/100) == 3);
-	   
-	   // If colliding with wall
-	   return (map.getTile(((int) testX + characterPadding)/100, (int) testY/100) == 1 ||
-		       map.getTile(((int) testX - characterPadding)/100, (int) testY/100) == 1 ||
-		       map.getTile((int) testX/100, ((int) testY + characterPadding)/100) == 1 ||
-		       map.getTile((int) testX/100, ((int) testY - characterPadding)/100) == 1);
-
+   /*
+    * Move by (dx, dy), treating the player as a circle of radius
+    * characterPadding that slides along walls instead of stopping dead.
+    *
+    * The move is split into sub-steps no longer than the radius, so however
+    * fast the player goes the circle can never jump over a wall, and its
+    * center never gets past the middle of a wall tile before being pushed
+    * back out the side it came in from. Each sub-step moves along x and then
+    * along y, and after each the circle is pushed out of every wall tile it
+    * overlaps. Only the tiles under the circle's bounding box are looked at
+    * (one to four for a radius smaller than a tile). Touching a goal tile is
+    * remembered separately and doesn't block movement.
+    */
+   public void move(Map map, double dx, double dy) {
+       double length = Math.sqrt(dx * dx + dy * dy);
+       int steps = Math.max(1, (int) Math.ceil(length / characterPadding));
+       double stepX = dx / steps;
+       double stepY = dy / steps;
+       for (int step = 0; step < steps; step++) {
+           x += stepX;
+           resolveCollisions(map);
+           y += stepY;
+           resolveCollisions(map);
+       }
+   }
+   
+   /*
+    * Push the circle out of the wall tiles it overlaps and note any goal tile
+    * it touches. Contacts with the flat side of a tile are handled before
+    * contacts with a tile's corner: where two wall tiles meet in a straight
+    * wall, the corner of one would otherwise nudge the circle sideways while
+    * it slides along the side of the other.
+    */
+   private void resolveCollisions(Map map) {
+       for (int pass = 0; pass < 2; pass++) {
+           boolean corners = pass == 1;
+           int tileSize = map.getTileSize();
+           int minCol = (int) Math.floor((x - characterPadding) / tileSize);
+           int maxCol = (int) Math.floor((x + characterPadding) / tileSize);
+           int minRow = (int) Math.floor((y - characterPadding) / tileSize);
+           int maxRow = (int) Math.floor((y + characterPadding) / tileSize);
+           
+           for (int row = minRow; row <= maxRow; row++) {
+               for (int col = minCol; col <= maxCol; col++) {
+                   resolveTile(map.getTile(col, row), col * tileSize, row * tileSize, tileSize, corners);
+               }
+           }
+       }
+   }
+   
+   private void resolveTile(int tile, double left, double top, int tileSize, boolean corners) {
+       if (tile != 1 && tile != 3 && tile >= 0) {
+           return; // Open (outside the map counts as wall)
+       }
+       
+       // Closest point of the tile to the circle's center
+       double nearestX = Math.max(left, Math.min(x, left + tileSize));
+       double nearestY = Math.max(top, Math.min(y, top + tileSize));
+       double offsetX = x - nearestX;
+       double offsetY = y - nearestY;
+       double distanceSq = offsetX * offsetX + offsetY * offsetY;
+       if (distanceSq >= characterPadding * characterPadding) {
+           return;
+       }
+       if (!corners && offsetX != 0 && offsetY != 0) {
+           return; // Corner contact, left for the second pass
+       }
+       
+       if (tile == 3) {
+           reachedGoal = true; // Once reached it stays reached, later steps can't undo it
+       } else if (distanceSq > 0) {
+           // Push straight away from the closest point, which slides the circle
+           // along flat walls and rounds it past corners
+           double distance = Math.sqrt(distanceSq);
+           double push = (characterPadding - distance) / distance;
+           x += offsetX * push;
+           y += offsetY * push;
+       } else {
+           // Center inside the tile (only when starting inside a wall): leave by the nearest side
+           pushOutOfTile(left, top, tileSize);
+       }
+   }
+   
+   private void pushOutOfTile(double left, double top, int tileSize) {
+       double toLeft = x - left + characterPadding;
+       double toRight = left + tileSize - x + characterPadding;
+       double toTop = y - top + characterPadding;
+       double toBottom = top + tileSize - y + characterPadding;
+       double nearest = Math.min(Math.min(toLeft, toRight), Math.min(toTop, toBottom));
+       if (nearest == toLeft) {
+           x -= toLeft;
+       } else if (nearest == toRight) {
+           x += toRight;
+       } else if (nearest == toTop) {
+           y -= toTop;
+       } else {
+           y += toBottom;
+       }
    }
    public void rotateLeft() {
-       this.angle -= rotationSpeed;
+       setAngle(angle - rotationSpeed);
    }
    public void rotateRight() {
-       this.angle += rotationSpeed;
+       setAngle(angle + rotationSpeed);
+   }
+   
+   // Wrap the angle so it doesn't drift without bound over long sessions
+   private void setAngle(double angle) {
+       double fullTurn = 2 * Math.PI;
+       angle %= fullTurn;
+       if (angle < 0) {
+           angle += fullTurn;
+       }
+       this.angle = angle;
+       this.angleCos = Math.cos(angle);
+       this.angleSin = Math.sin(angle);
    }
    public double getX() {
        return x;
@@ -75,9 +207,19 @@ public class Player {
    public double getAngle() {
        return angle;
    }
+   public double getAngleCos() {
+       return angleCos;
+   }
+   public double getAngleSin() {
+       return angleSin;
+   }
+   // Distance moved per tick when walking
+   public double getSpeed() {
+       return speed;
+   }
    
-   public boolean getGameOver() {
-	   return gameOver;
+   public boolean hasReachedGoal() {
+	   return reachedGoal;
    }
 }
 
@@ -1,7 +1,14 @@
 package com.perseus.raycaster;
 
 public class Ray {
-    private final double angle;
+    // DDA walks the grid one tile boundary at a time, MARCH is the original fixed step
+    // marcher which is kept around so the two can be compared on screen
+    public enum CastMode {
+        DDA, MARCH
+    }
+
+    private double dirX; // Unit direction of the ray
+    private double dirY;
     private double distance;
     private boolean verticalHit;
     private double wallHitX;
@@ -10,14 +17,43 @@ public class Ray {
     private double initialY;
     private int finalX;
     private int finalY;
-    
+    private int hitTileX;
+    private int hitTileY;
+    private double textureOffset;
+    private boolean solidGoals = true; // False when goals are drawn as sprites and rays see past them
+    private boolean skipEmptySpace = true; // Use the map's distance field to cross open areas quickly
+
     public Ray(double angle) {
-        this.angle = angle;
+        this(Math.cos(angle), Math.sin(angle));
+    }
+
+    public Ray(double dirX, double dirY) {
+        setDirection(dirX, dirY);
+    }
+
+    // Lets one ray be reused for many columns
+    public void setDirection(double dirX, double dirY) {
+        this.dirX = dirX;
+        this.dirY = dirY;
     }
 
     public void cast(Map map, Player player) {
+        cast(map, player, CastMode.DDA);
+    }
+
+    public void cast(Map map, Player player, CastMode mode) {
         initialX = player.getX();
         initialY = player.getY();
+
+        if (mode == CastMode.MARCH) {
+            march(map);
+        } else {
+            traverse(map);
+        }
+    }
+
+    private void march(Map map) {
+        int tileSize = map.getTileSize();
     	double x = initialX;
         double y = initialY;
         int xbefore = 0;
@@ -25,23 +61,178 @@ public class Ray {
         double rayStepSize = 1; // "speed" of the ray
 
         // While not wall or end point
-        while (!map.isWall((int) x, (int) y)) {
-            xbefore = (int) Math.floor(x / Map.TILE_SIZE);
+        while (!stopsMarch(map, (int) x, (int) y, tileSize)) {
+            xbefore = (int) Math.floor(x / tileSize);
 
-            x += Math.cos(angle) * rayStepSize;
-            y += Math.sin(angle) * rayStepSize;
+            x += dirX * rayStepSize;
+            y += dirY * rayStepSize;
         }
 
         // Check if hit along x axis or y axis
-        verticalHit = ((xbefore != Math.floor(x / Map.TILE_SIZE)));
+        verticalHit = ((xbefore != Math.floor(x / tileSize)));
+
+        distance = Math.sqrt((x - initialX) * (x - initialX) + (y - initialY) * (y - initialY));
+
+        // The marcher stops just inside the wall, so the tile it stopped in is the one that was hit
+        hitTileX = (int) x / tileSize;
+        hitTileY = (int) y / tileSize;
+
+        setHitPoint(x, y, tileSize);
+    }
+
+    // Whether the marcher has reached something it can't see past
+    private boolean stopsMarch(Map map, int x, int y, int tileSize) {
+        if (solidGoals) {
+            return map.isWall(x, y);
+        }
+        int tile = map.getTile(x / tileSize, y / tileSize);
+        return tile == 1 || tile < 0;
+    }
+
+    /*
+     * Grid traversal (DDA): instead of moving a fixed distance each step, the ray
+     * jumps straight to whichever tile boundary (vertical or horizontal) it reaches
+     * first. Every step lands in a new tile, so the cost depends on how many tiles
+     * are crossed rather than on how far away the wall is.
+     *
+     * The distance to the n-th vertical boundary is always worked out as
+     * first + n * delta (not by adding delta up step by step), so the ray can
+     * also skip many boundaries at once and still end up with exactly the same
+     * numbers. That is what empty space skipping does: when the map's distance
+     * field says the current tile is in the middle of an open square, every
+     * boundary inside that square is passed in one go.
+     */
+    private void traverse(Map map) {
+        int tileSize = map.getTileSize();
+
+        int mapX = (int) Math.floor(initialX / tileSize);
+        int mapY = (int) Math.floor(initialY / tileSize);
+
+        // Distance along the ray between two vertical / horizontal tile boundaries
+        double deltaX = (dirX == 0) ? Double.MAX_VALUE : Math.abs(tileSize / dirX);
+        double deltaY = (dirY == 0) ? Double.MAX_VALUE : Math.abs(tileSize / dirY);
+
+        // Distance along the ray to the first vertical / horizontal tile boundary
+        int stepX;
+        int stepY;
+        double firstX;
+        double firstY;
+        if (dirX < 0) {
+            stepX = -1;
+            firstX = (initialX - mapX * tileSize) / -dirX;
+        } else {
+            stepX = 1;
+            firstX = (dirX == 0) ? Double.MAX_VALUE : ((mapX + 1) * tileSize - initialX) / dirX;
+        }
+        if (dirY < 0) {
+            stepY = -1;
+            firstY = (initialY - mapY * tileSize) / -dirY;
+        } else {
+            stepY = 1;
+            firstY = (dirY == 0) ? Double.MAX_VALUE : ((mapY + 1) * tileSize - initialY) / dirY;
+        }
+
+        int startX = mapX;
+        int startY = mapY;
+        int crossedX = 0; // Vertical / horizontal boundaries passed so far
+        int crossedY = 0;
+
+        // Step into the next tile until a wall or end point (odd tile) is found.
+        // Leaving the map also stops the ray so it can never run forever.
+        while (true) {
+            int clearance = skipEmptySpace ? map.getClearance(mapX, mapY) : 0;
+            if (clearance > 1) {
+                // Every tile less than clearance away is open: pass all boundaries up to the
+                // one that leaves that square, which is then taken (and checked) below
+                int limitX = crossedX + clearance - 1;
+                int limitY = crossedY + clearance - 1;
+                double exitX = firstX + limitX * deltaX;
+                double exitY = firstY + limitY * deltaY;
+                if (exitX < exitY) {
+                    crossedY = crossingsBefore(firstY, deltaY, crossedY, limitY, exitX, true);
+                    crossedX = limitX;
+                } else {
+                    crossedX = crossingsBefore(firstX, deltaX, crossedX, limitX, exitY, false);
+                    crossedY = limitY;
+                }
+                mapX = startX + stepX * crossedX;
+                mapY = startY + stepY * crossedY;
+            }
+
+            double sideX = firstX + crossedX * deltaX;
+            double sideY = firstY + crossedY * deltaY;
+            if (sideX < sideY) {
+                distance = sideX;
+                crossedX++;
+                mapX += stepX;
+                verticalHit = true;
+            } else {
+                distance = sideY;
+                crossedY++;
+                mapY += stepY;
+                verticalHit = false;
+            }
 
-        distance = Math.sqrt((x - player.getX()) * (x - player.getX()) + (y - player.getY()) * (y - player.getY()));
-        
+            int tile = map.getTile(mapX, mapY);
+            if (tile < 0 || (tile % 2 == 1 && (solidGoals || tile != 3))) {
+                break;
+            }
+        }
+
+        hitTileX = mapX;
+        hitTileY = mapY;
+
+        setHitPoint(initialX + dirX * distance, initialY + dirY * distance, tileSize);
+    }
+
+    /*
+     * How many boundaries of one axis (at first + n * delta) the stepping loop
+     * passes before the boundary of the other axis at distance exit, starting
+     * from crossed and never beyond limit. On a tie the loop takes the
+     * horizontal boundary first, so it counts as before the vertical one.
+     * The estimate from the division is corrected with the exact expression
+     * the loop uses, so rounding can't make the two disagree.
+     */
+    private static int crossingsBefore(double first, double delta, int crossed, int limit, double exit,
+            boolean tieCounts) {
+        int n = crossed;
+        if (delta != Double.MAX_VALUE) {
+            double estimate = Math.floor((exit - first) / delta) + 1;
+            n = (int) Math.max(crossed, Math.min(limit, estimate));
+        }
+        while (n > crossed && !before(first + (n - 1) * delta, exit, tieCounts)) {
+            n--;
+        }
+        while (n < limit && before(first + n * delta, exit, tieCounts)) {
+            n++;
+        }
+        return n;
+    }
+
+    private static boolean before(double side, double exit, boolean tieCounts) {
+        return tieCounts ? side <= exit : side < exit;
+    }
+
+    private void setHitPoint(double x, double y, int tileSize) {
         finalX = (int) Math.round(x);
         finalY = (int) Math.round(y);
-        
-        wallHitX = Math.round(x%100);
-        wallHitY = Math.round(y%100);
+
+        wallHitX = Math.round(x%tileSize);
+        wallHitY = Math.round(y%tileSize);
+
+        // Position along the wall face from 0 (inclusive) to 1 (exclusive)
+        double along = verticalHit ? y - hitTileY * tileSize : x - hitTileX * tileSize;
+        textureOffset = Math.min(Math.max(along / tileSize, 0), 0.999999);
+    }
+
+    // Whether rays stop at goal tiles (drawn as blocks) or pass through them (drawn as sprites)
+    public void setSolidGoals(boolean solidGoals) {
+        this.solidGoals = solidGoals;
+    }
+
+    // Only for comparing: the result is the same either way, skipping just takes fewer steps
+    public void setSkipEmptySpace(boolean skipEmptySpace) {
+        this.skipEmptySpace = skipEmptySpace;
     }
 
     public double getDistance() {
@@ -59,19 +250,19 @@ public class Ray {
     public double getWallHitY() {
         return wallHitY;
     }
-    
+
     public double getInitialX() {
     	return initialX;
     }
-    
+
     public double getInitialY() {
     	return initialY;
     }
-    
+
     public int getFinalY() {
     	return finalY;
     }
-    
+
     public int getFinalX() {
     	return finalX;
     }
@@ -79,4 +270,16 @@ public class Ray {
     public boolean getVerticalHit() {
         return verticalHit;
     }
+
+    public int getHitTileX() {
+        return hitTileX;
+    }
+
+    public int getHitTileY() {
+        return hitTileY;
+    }
+
+    public double getTextureOffset() {
+        return textureOffset;
+    }
 }
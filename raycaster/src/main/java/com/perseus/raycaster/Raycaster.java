@@ -9,18 +9,19 @@ import javafx.scene.input.KeyCode;
 import javafx.scene.input.KeyEvent;
 import javafx.scene.layout.StackPane;
 import javafx.scene.paint.Color;
+import javafx.scene.text.Font;
 import javafx.stage.Stage;
-import javafx.scene.image.Image;
-import javafx.scene.image.PixelReader;
+import javafx.scene.image.PixelBuffer;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
 
-import java.io.File;
+import java.nio.IntBuffer;
+import java.nio.file.Paths;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import org.w3c.dom.Document;
-import org.w3c.dom.NodeList;
 import javafx.animation.PauseTransition;
 import javafx.util.Duration;
 
@@ -28,28 +29,82 @@ public class Raycaster extends Application {
 
 	private int WIDTH = 750; // Width of the window (adjustable)
 	private int HEIGHT = 550; // Height of the window (adjustable)
-	private final int FOV = 60; // Field of View (FOV)
-	private final int TILE_SIZE = 100; // size of one map tile
-	private int WALL_HEIGHT_MULTIPLIER = (HEIGHT * 4) / 5; // Formula for the height of a wall in game
 
 	private Canvas canvas;
+
+	// Levels are played in the repository's order. Each one is parsed in the background while a
+	// progress screen shows, and the next one already while the current one is played
+	private LevelRepository levels;
+	private int levelIndex;
+	private CompletableFuture<Level> levelLoading;
+	private boolean levelLoadFailed;
+	private Level level; // Parsed once, restarting reuses it. Null while loading
 	private Player player;
 	private Map map;
+	private Sprites goalSprites; // A marker on every goal tile, shown instead of goal blocks with G
 	private final Set<KeyCode> keysPressed = new HashSet<>(); // A set of all pressed keys
 
-	private byte wallTextureTracker = 3; // An ID for what wall texture to use
-	private Image wallTexture;
-	private PixelReader pixelReader;
+	private TextureCache textures;
+	private int wallStyle = -1; // An ID for what wall texture to use
 
-	private String groundColor = "#717171";
-	private String skyColor = "#393939";
+	// Off-screen frame, written pixel by pixel and drawn onto the canvas once per frame
+	private FrameBuffer frameBuffer;
+	private PixelBuffer<IntBuffer> pixelBuffer;
+	private WritableImage frameImage;
 
-	private Image goalTexture;
-	private PixelReader goalPixelReader;
+	// Casts and shades the frame. Columns can be rendered on several cores at once (P
+	// toggles this), the worker count can be set with -Draycaster.renderThreads=n
+	private final Renderer renderer = new Renderer(
+			Integer.getInteger("raycaster.renderThreads", Runtime.getRuntime().availableProcessors()));
 
 	private AnimationTimer timer;
 
-	private long levelStartTime; // For the timer at the win screen
+	// Per-phase timings of recent frames. F3 shows them on screen; with
+	// -Draycaster.frameStatsCsv=file they are also written to a csv when the level ends
+	private final FrameStats frameStats = new FrameStats(4096);
+	private final String frameStatsCsv = System.getProperty("raycaster.frameStatsCsv");
+	private boolean showFrameStats = false;
+	private String[] frameStatsLines = new String[0]; // Only rebuilt a few times a second
+	private long frameStatsUpdated;
+	private final Font frameStatsFont = Font.font("Monospaced", 13);
+
+	// Dynamic resolution (V toggles it): one ray per column of a frame that is scaled to keep
+	// rendering within -Draycaster.targetFrameMs (default 10), then stretched to the window
+	private final ResolutionController resolution = new ResolutionController(
+			(long) (Double.parseDouble(System.getProperty("raycaster.targetFrameMs", "10")) * 1_000_000));
+	private boolean dynamicResolution = false;
+
+	/*
+	 * The game is simulated in fixed ticks, independent of how often frames are
+	 * drawn. Movement, collision, the goal check and the level timer only ever
+	 * advance a whole tick at a time, so gameplay and completion times are the
+	 * same at any frame rate. Frames drawn between two ticks show the player
+	 * interpolated between them. 60 ticks per second keeps the movement speed
+	 * the game was tuned for on a 60 Hz display.
+	 */
+	public static final int TICK_RATE = 60;
+	private static final long TICK_NANOS = 1_000_000_000L / TICK_RATE;
+	private static final int MAX_TICKS_PER_FRAME = 10; // After a long stall, skip ahead instead of catching up
+
+	private long lastFrameTime = -1;
+	private long tickAccumulator; // Time not yet simulated, always less than a tick after a frame
+	private final Player viewPlayer = new Player(0, 0, 0); // Interpolated player the frame is drawn from
+
+	private long levelTicks; // For the timer at the win screen
+	// Shortest walk to the goal in world units (-1 if there is none), worked out in the background
+	// for the par time at the win screen. Null for chunked maps, which are too big to search
+	private CompletableFuture<Double> parDistance;
+
+	// With -Draycaster.recordInput=file the inputs of every tick are recorded and written
+	// there when the level is completed, for replaying without a window (see InputRecording)
+	private final String recordInputFile = System.getProperty("raycaster.recordInput");
+	private InputRecording recording;
+
+	// Edits to the level file show up while playing: the file is parsed again in the background
+	// and the changed tiles are swapped in between two ticks. -Draycaster.hotReload=false turns
+	// this off, which lets binary levels be memory-mapped again
+	private final boolean hotReload = Boolean.parseBoolean(System.getProperty("raycaster.hotReload", "true"));
+	private LevelWatcher levelWatcher;
 	private double finalElapsedTime = -1; // -1 indicates the game is not over yet
 	private PauseTransition pauseTransition;
 	private boolean gameOver = false;
@@ -58,35 +113,49 @@ public class Raycaster extends Application {
 	public void start(Stage primaryStage) {
 		canvas = new Canvas(WIDTH, HEIGHT);
 		GraphicsContext gc = canvas.getGraphicsContext2D();
+		createFrameBuffer();
 
-		loadLevelData(); // Extracts all of the data from LevelData.xml
-
-		levelStartTime = System.nanoTime(); // Start tracking time
+		levels = LevelRepository.create(!hotReload); // A watched file is rewritten, so don't map it
+		startLevel(0);
 
-		switchWallTexture(); // Load initial textures
-
-		// Load goal texture (doesn't change)
-		goalTexture = new Image(getClass().getResourceAsStream("/com/perseus/raycaster/textures/goal.png"));
-		goalPixelReader = goalTexture.getPixelReader();
+		// Textures were already being decoded in the background since the menu opened
+		textures = TextureCache.get();
+		switchWallTexture(); // Pick the initial style
+		renderer.setGoalTexture(textures.getGoalTexture()); // Goal texture doesn't change
+		renderer.setFrameStats(frameStats);
 
 		timer = new AnimationTimer() {
 			@Override
 			public void handle(long now) {
-				// once true, gameOver will never be set to false
-				if (player.getGameOver()) {
-					gameOver = true;
+				if (level == null && !takeLoadedLevel()) {
+					if (handleLoadingKeys(primaryStage)) {
+						renderLoading(gc);
+					}
+					return;
+				}
+
+				long frameStart = System.nanoTime();
+				if (!gameOver) {
+					if (!handleKeys(primaryStage)) { // Menu, restart and toggles
+						return; // Back at the menu, the level and renderer are gone
+					}
+					advanceSimulation(now); // Run the ticks that are due
+					frameStats.add(FrameStats.Phase.SIMULATE, System.nanoTime() - frameStart);
 				}
 
 				if (gameOver) {
 					if (finalElapsedTime < 0) { // Record final time only once
-						long elapsedTimeNano = System.nanoTime() - levelStartTime;
-						finalElapsedTime = elapsedTimeNano / 1_000_000_000.0; // Convert to seconds
+						finalElapsedTime = levelTicks / (double) TICK_RATE; // Convert to seconds
+						writeFrameStats();
+						writeRecording();
 					}
 					renderLevelComplete(gc); // Load level complete screen
-					startReturnToMenuTimer(primaryStage); // Start 3 second timer
+					startLevelCompleteTimer(primaryStage); // Start 3 second timer
 				} else {
-					updateMovement(primaryStage); // Check set for movement keys
 					render(gc); // Render map
+					long frameEnd = System.nanoTime();
+					frameStats.add(FrameStats.Phase.FRAME, frameEnd - frameStart);
+					frameStats.endFrame(frameEnd);
 				}
 			}
 		};
@@ -98,12 +167,12 @@ public class Raycaster extends Application {
 		// Window resizing
 		// Only enable resizing if the game is not over
 		scene.widthProperty().addListener((obs, oldVal, newVal) -> {
-			if (!player.getGameOver()) {
+			if (!gameOver) {
 				resizeWindow(primaryStage, newVal.doubleValue(), scene.getHeight());
 			}
 		});
 		scene.heightProperty().addListener((obs, oldVal, newVal) -> {
-			if (!player.getGameOver()) {
+			if (!gameOver) {
 				resizeWindow(primaryStage, scene.getWidth(), newVal.doubleValue());
 			}
 		});
@@ -118,14 +187,22 @@ public class Raycaster extends Application {
 		primaryStage.show();
 	}
 
-	// Start the 3-second delay before returning to the menu
-	private void startReturnToMenuTimer(Stage primaryStage) {
+	// Start the 3-second delay before the next level, or the menu after the last one
+	private void startLevelCompleteTimer(Stage primaryStage) {
 		if (pauseTransition == null) {
+			levels.preload(levelIndex + 1); // Normally already loaded while playing
+
 			// Create a pause transition that lasts 3 seconds
 			pauseTransition = new PauseTransition(Duration.seconds(3));
 
-			// Once the 3 seconds pass, return to the menu
-			pauseTransition.setOnFinished(event -> returnToMenu(primaryStage));
+			// Once the 3 seconds pass, move on
+			pauseTransition.setOnFinished(event -> {
+				if (levelIndex + 1 < levels.size()) {
+					startLevel(levelIndex + 1);
+				} else {
+					returnToMenu(primaryStage);
+				}
+			});
 
 			// Start the transition
 			pauseTransition.play();
@@ -138,12 +215,26 @@ public class Raycaster extends Application {
 		canvas.setHeight(newHeight);
 
 		// Update rendering parameters
-		WALL_HEIGHT_MULTIPLIER = (int) ((newHeight * 4) / 5); // Dynamically adjust wall height
 		WIDTH = (int) newWidth;
 		HEIGHT = (int) newHeight;
+		createFrameBuffer();
 
 		// Force re-render
-		render(canvas.getGraphicsContext2D());
+		if (level != null) {
+			render(canvas.getGraphicsContext2D());
+		}
+	}
+
+	// (Re)create the off-screen frame to match the window size, or the part of it the
+	// dynamic resolution currently renders
+	private void createFrameBuffer() {
+		double scale = dynamicResolution ? resolution.getScale() : 1;
+		frameBuffer = new FrameBuffer(Math.max(1, (int) Math.round(WIDTH * scale)),
+				Math.max(1, (int) Math.round(HEIGHT * scale)));
+		renderer.setDisplayHeight(HEIGHT); // The frame is stretched to the window
+		pixelBuffer = new PixelBuffer<>(frameBuffer.getWidth(), frameBuffer.getHeight(),
+				IntBuffer.wrap(frameBuffer.getPixels()), PixelFormat.getIntArgbPreInstance());
+		frameImage = new WritableImage(pixelBuffer);
 	}
 
 	private void handleKeyPressed(KeyEvent event) {
@@ -154,61 +245,200 @@ public class Raycaster extends Application {
 		keysPressed.remove(event.getCode());
 	}
 
-	private void updateMovement(Stage primaryStage) {
+	// Run as many fixed ticks as the time since the last frame covers
+	private void advanceSimulation(long now) {
+		if (lastFrameTime < 0) {
+			lastFrameTime = now;
+		}
+		tickAccumulator += now - lastFrameTime;
+		lastFrameTime = now;
+
+		if (levelWatcher != null) {
+			LevelWatcher.Change changed = levelWatcher.poll();
+			if (changed != null) {
+				applyLevelChange(changed);
+			}
+		}
+
+		int ticks = 0;
+		while (tickAccumulator >= TICK_NANOS && !gameOver) {
+			if (ticks++ == MAX_TICKS_PER_FRAME) {
+				tickAccumulator = 0; // Drop the backlog, the level timer only counts simulated ticks
+				break;
+			}
+			tick();
+			tickAccumulator -= TICK_NANOS;
+		}
+	}
+
+	// One step of the game, movement keys are sampled here so a tick always sees one input state
+	private void tick() {
+		int input = 0;
 		if (keysPressed.contains(KeyCode.W) || (keysPressed.contains(KeyCode.UP))) // Forward
-			player.moveForward(map);
+			input |= Player.FORWARD;
 		if (keysPressed.contains(KeyCode.S) || (keysPressed.contains(KeyCode.DOWN))) // Backward
-			player.moveBackward(map);
+			input |= Player.BACKWARD;
 		if (keysPressed.contains(KeyCode.A) || (keysPressed.contains(KeyCode.LEFT))) // Turn left
-			player.rotateLeft();
+			input |= Player.TURN_LEFT;
 		if (keysPressed.contains(KeyCode.D) || (keysPressed.contains(KeyCode.RIGHT))) // Turn right
-			player.rotateRight();
-		if (keysPressed.contains(KeyCode.ESCAPE)) // Return to menu
+			input |= Player.TURN_RIGHT;
+
+		player.beginTick();
+		player.update(map, input);
+		map.prefetch(player.getX(), player.getY(), player.getAngleCos(), player.getAngleSin());
+		if (recording != null) {
+			recording.record(input);
+		}
+		levelTicks++;
+
+		// once true, gameOver will never be set to false
+		if (player.hasReachedGoal()) {
+			gameOver = true;
+		}
+	}
+
+	// Returns false if the player left for the menu
+	private boolean handleKeys(Stage primaryStage) {
+		if (keysPressed.contains(KeyCode.ESCAPE)) { // Return to menu
 			returnToMenu(primaryStage);
+			return false;
+		}
 		if (keysPressed.contains(KeyCode.R)) // Restart
 			reloadLevelData();
 		if (keysPressed.contains(KeyCode.F)) { // Switch texture
 			keysPressed.remove(KeyCode.F); // To avoid holding down and rapidly switching textures
 			switchWallTexture();
 		}
+		if (keysPressed.contains(KeyCode.M)) { // Switch between grid traversal and ray marching
+			keysPressed.remove(KeyCode.M);
+			renderer.setCastMode(
+					(renderer.getCastMode() == Ray.CastMode.DDA) ? Ray.CastMode.MARCH : Ray.CastMode.DDA);
+		}
+		if (keysPressed.contains(KeyCode.P)) { // Switch between single and multi-core rendering
+			keysPressed.remove(KeyCode.P);
+			renderer.setParallelRendering(!renderer.isParallelRendering());
+		}
+		if (keysPressed.contains(KeyCode.G)) { // Switch between goal blocks and goal markers
+			keysPressed.remove(KeyCode.G);
+			boolean markers = renderer.isSolidGoals();
+			renderer.setSolidGoals(!markers);
+			renderer.setSprites(markers ? goalSprites : null, textures.getGoalSprite());
+		}
+		if (keysPressed.contains(KeyCode.T)) { // Switch between textured and flat floor and ceiling
+			keysPressed.remove(KeyCode.T);
+			renderer.setTexturedFloor(!renderer.isTexturedFloor());
+		}
+		if (keysPressed.contains(KeyCode.V)) { // Switch dynamic resolution on or off
+			keysPressed.remove(KeyCode.V);
+			dynamicResolution = !dynamicResolution;
+			renderer.setColumnWidth(dynamicResolution ? 1 : 0);
+			resolution.reset();
+			createFrameBuffer();
+		}
+		if (keysPressed.contains(KeyCode.F3)) { // Show or hide the frame timings
+			keysPressed.remove(KeyCode.F3);
+			showFrameStats = !showFrameStats;
+		}
+		return true;
 	}
 
+	// Textures are decoded once by the TextureCache, so this only swaps references
 	private void switchWallTexture() {
-		wallTextureTracker++; // To cycle through the textures
-		if (wallTextureTracker > 3) {
-			wallTextureTracker = 1;
-		}
-		switch (wallTextureTracker) {
-		case 1:
-			wallTexture = new Image(getClass().getResourceAsStream("/com/perseus/raycaster/textures/wall_texture.png"));
-			groundColor = "#717171";
-			skyColor = "#393939";
-			break;
-		case 2:
-			wallTexture = new Image(
-					getClass().getResourceAsStream("/com/perseus/raycaster/textures/cool_wall_texture.png"));
-			groundColor = "#000000";
-			skyColor = "#000000";
-			break;
-		case 3:
-			wallTexture = new Image(getClass().getResourceAsStream("/com/perseus/raycaster/textures/backrooms.png"));
-			groundColor = "#AFA232";
-			skyColor = "#766B1B";
-			break;
-		}
-		pixelReader = wallTexture.getPixelReader();
+		wallStyle++; // To cycle through the textures
+		if (wallStyle >= textures.getStyleCount()) {
+			wallStyle = 0;
+		}
+		renderer.setWallTexture(textures.getWallTexture(wallStyle));
+		renderer.setColors(textures.getSkyColor(wallStyle), textures.getGroundColor(wallStyle));
+		renderer.setFloorTextures(textures.getFloorTexture(wallStyle), textures.getCeilingTexture(wallStyle));
 	}
 
 	private void render(GraphicsContext gc) {
-		gc.clearRect(0, 0, WIDTH, HEIGHT); // Clear screen
+		long renderStart = System.nanoTime();
+
+		// Draw the player where it is between the last two ticks
+		player.interpolate(viewPlayer, tickAccumulator / (double) TICK_NANOS);
+		renderer.render(map, viewPlayer, frameBuffer); // Sky, ground and walls
+
+		// Hand the finished frame to JavaFX and draw it with a single call
+		long presentStart = System.nanoTime();
+		pixelBuffer.updateBuffer(buffer -> null);
+		if (frameBuffer.getWidth() == WIDTH && frameBuffer.getHeight() == HEIGHT) {
+			gc.drawImage(frameImage, 0, 0);
+		} else {
+			gc.setImageSmoothing(false); // Keep the pixels sharp when scaling up
+			gc.drawImage(frameImage, 0, 0, WIDTH, HEIGHT);
+		}
+		long renderEnd = System.nanoTime();
+		frameStats.add(FrameStats.Phase.PRESENT, renderEnd - presentStart);
 
-		gc.setFill(Color.web(skyColor)); // sky color
-		gc.fillRect(0, 0, WIDTH, HEIGHT / 2); // Set top half to sky color
+		// Let the controller pick the resolution of the next frame
+		if (dynamicResolution && resolution.update(renderEnd - renderStart)) {
+			createFrameBuffer();
+		}
+
+		if (showFrameStats) {
+			renderFrameStats(gc);
+		}
+	}
+
+	// FPS and p50/p95/p99 of every phase in the top left corner
+	private void renderFrameStats(GraphicsContext gc) {
+		long now = System.nanoTime();
+		if (now - frameStatsUpdated > 250_000_000L) { // Text changes 4 times a second, readable and cheap
+			frameStatsUpdated = now;
+			FrameStats.Phase[] phases = FrameStats.Phase.values();
+			frameStatsLines = new String[phases.length + 2];
+			frameStatsLines[0] = String.format("%.1f fps  %d frames", frameStats.getFps(), frameStats.getFrameCount())
+					+ (dynamicResolution ? String.format("  res %.0f%%", resolution.getScale() * 100) : "");
+			frameStatsLines[1] = String.format("%-8s %7s %7s %7s", "ms", "p50", "p95", "p99");
+			for (int i = 0; i < phases.length; i++) {
+				FrameStats.Phase phase = phases[i];
+				frameStatsLines[i + 2] = String.format("%-8s %7.2f %7.2f %7.2f", phase.getLabel(),
+						frameStats.percentile(phase, 50) / 1e6, frameStats.percentile(phase, 95) / 1e6,
+						frameStats.percentile(phase, 99) / 1e6);
+			}
+		}
+
+		gc.setFill(Color.rgb(0, 0, 0, 0.6));
+		gc.fillRect(5, 5, 250, frameStatsLines.length * 16 + 10);
+		gc.setFill(Color.LIMEGREEN);
+		gc.setFont(frameStatsFont);
+		for (int i = 0; i < frameStatsLines.length; i++) {
+			gc.fillText(frameStatsLines[i], 12, 24 + i * 16);
+		}
+	}
+
+	// Dump the timings of the level's last frames if a csv file was asked for
+	private void writeFrameStats() {
+		if (frameStatsCsv == null) {
+			return;
+		}
+		try {
+			frameStats.writeCsv(Paths.get(frameStatsCsv));
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+	}
 
-		gc.setFill(Color.web(groundColor)); // ground color
-		gc.fillRect(0, HEIGHT / 2, WIDTH, HEIGHT / 2); // Set bottom half to ground color
+	// Save the session's inputs if a recording was asked for
+	private void writeRecording() {
+		if (recording == null) {
+			return;
+		}
+		try {
+			recording.finish(player, (int) levelTicks);
+			recording.write(Paths.get(recordInputFile));
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+	}
 
-		castRays(gc); // Render walls
+	// Start recording a new session of the level, if recording
+	private void startRecording() {
+		// The recording checksums every tile, which a chunked map doesn't have at hand
+		recording = (recordInputFile != null && level != null && !(map instanceof ChunkedMap))
+				? new InputRecording(level) : null;
 	}
 
 	// Render the "Level Complete" screen
@@ -228,185 +458,174 @@ public class Raycaster extends Application {
 		// Draw elapsed time in green
 		gc.setFont(javafx.scene.text.Font.font("Arial", 24));
 		gc.fillText("Time: " + formattedTime + " seconds", WIDTH / 2 - 120, HEIGHT / 2 + 20);
+		double parTime = getParTime();
+		if (parTime >= 0) {
+			// The shortest walk at full speed, ignoring the time spent turning
+			gc.fillText(String.format("Par:   %.3f seconds", parTime), WIDTH / 2 - 120, HEIGHT / 2 + 55);
+		}
+		if (levelIndex + 1 < levels.size()) {
+			gc.fillText("Next: " + levels.getEntries().get(levelIndex + 1).getName(), WIDTH / 2 - 120, HEIGHT / 2 + 95);
+		}
 	}
 
-	private void castRays(GraphicsContext gc) {
-
-		/*
-		 * the castRays method works by using a for loop to cast a certain amount of
-		 * rays on the screen, the rays will travel forward until they hit a wall or
-		 * goal. Once this has been reached, another for loop will start, this time for
-		 * the vertical component.
-		 * 
-		 * Using pixel readers, it will find the corresponding pixel from the texture
-		 * and draw it on the screen one artificial pixel at a time
-		 */
-
-		double rayAngle;
-		double rayStep = Math.toRadians(FOV) / WIDTH;
-		int pixelSize = WIDTH / 175;
-		// The denominator represents how many rays will be cast
-		// lower number = more artificially pixelated
-
-		double yOffset = player.getAnimationOffset(); // Walking animation height offset
-
-		for (int x = 0; x < WIDTH; x += pixelSize) { // For every artificial pixel
-			rayAngle = player.getAngle() - Math.toRadians(FOV / 2) + x * rayStep; // Calculate ray angle
-			Ray ray = new Ray(rayAngle);
-			ray.cast(map, player); // Cast ray at angle
-
-			double distance = ray.getDistance() * Math.cos(rayAngle - player.getAngle()); // Get distance between player
-																							// and ray
-
-			double wallHeight = (TILE_SIZE / distance) * WALL_HEIGHT_MULTIPLIER; // Find wall Height
+	/*
+	 * Leave the current level (if any) and start loading the one at index.
+	 * Until it is loaded the timer only draws the loading screen.
+	 */
+	private void startLevel(int index) {
+		closeLevel();
+		levelIndex = index;
+		levelLoading = levels.load(index);
+		levelLoadFailed = false;
+
+		levelTicks = 0;
+		tickAccumulator = 0;
+		lastFrameTime = -1;
+		finalElapsedTime = -1;
+		gameOver = false;
+		pauseTransition = null;
+		frameStats.reset();
+	}
 
-			long roundX;
-			long roundY;
+	// Start playing the level being loaded if it is ready. Returns whether there is a level to play
+	private boolean takeLoadedLevel() {
+		if (levelLoadFailed || !levelLoading.isDone()) {
+			return false;
+		}
+		try {
+			level = levelLoading.join();
+		} catch (CompletionException e) {
+			e.printStackTrace();
+			levelLoadFailed = true;
+			return false;
+		}
 
-			int texX;
-			// This next block of code is to retrieve the proper tile calculated by the
-			// initial and final coordinates of the ray.
+		// Initialize map and player
+		map = level.getMap();
+		player = level.createPlayer();
+		// Finding every goal would read the whole of a chunked map, so those get no markers
+		goalSprites = (map instanceof ChunkedMap) ? new Sprites()
+				: Sprites.onTiles(map, 3, map.getTileSize() * 0.6, 0);
+		if (!renderer.isSolidGoals()) { // Goal markers are showing
+			renderer.setSprites(goalSprites, textures.getGoalSprite());
+		}
+		startRecording();
+		startParSearch(level);
+
+		// Chunked maps read their tiles from the file as needed and can't be patched in place
+		LevelRepository.Entry entry = levels.getEntries().get(levelIndex);
+		if (hotReload && entry.getDirectory() != null && map.canChangeTiles()) {
+			int watchedIndex = levelIndex;
+			try {
+				levelWatcher = new LevelWatcher(entry.getDirectory().toPath(),
+						Set.of(entry.getName() + ".xml", entry.getName() + LevelFile.EXTENSION),
+						() -> levels.reload(watchedIndex));
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+		}
 
-			// Because of how the map gets its tiles, roundX and roundY has to be made into
-			// a number representing the tile of the 2d array that the ray has hit. However,
-			// because the ray is technically landing between two tiles, the following code
-			// is used to determine which of the two tiles the ray should default to.
+		levels.preload(levelIndex + 1); // So moving on after this level is instant
+		lastFrameTime = -1; // Don't count the loading time as played
+		return true;
+	}
 
-			// For example: if the ray originates from the right and hits a vertical wall,
-			// then the selected tile should be on the left.
+	// Stop what belongs to the level being played
+	private void closeLevel() {
+		if (map != null) {
+			map.close(); // Stops the loader of a chunked map
+		}
+		if (levelWatcher != null) {
+			levelWatcher.close();
+			levelWatcher = null;
+		}
+		level = null;
+		map = null;
+		recording = null;
+		parDistance = null;
+	}
 
-			// This code demonstrates this by comparing the origin of the ray to the final
-			// location of the ray. Afterwards, it uses the corresponding formula for each
-			// tile, one using rounding, the other using integer division
+	// Returns false if the player left for the menu
+	private boolean handleLoadingKeys(Stage primaryStage) {
+		if (keysPressed.contains(KeyCode.ESCAPE)) { // Return to menu
+			returnToMenu(primaryStage);
+			return false;
+		}
+		if (keysPressed.contains(KeyCode.R) && levelLoadFailed) { // Try again
+			keysPressed.remove(KeyCode.R);
+			startLevel(levelIndex);
+		}
+		return true;
+	}
 
-			if (ray.getVerticalHit()) {
-				if (ray.getInitialX() > ray.getFinalX()) {
-					roundX = (long) (Math.round((ray.getFinalX() - TILE_SIZE) / (float) TILE_SIZE));
-				} else {
-					roundX = (long) (ray.getFinalX() / TILE_SIZE);
-				}
-				roundY = (long) (ray.getFinalY() / TILE_SIZE); // Because its a vertical hit, the Y value shouldn't
-																// greatly affect which tile is chosen.
-				texX = (int) ray.getWallHitY();
-			} else {
-				if (ray.getInitialY() > ray.getFinalY()) {
-					roundY = (long) (Math.round((ray.getFinalY() - TILE_SIZE) / (float) TILE_SIZE));
-				} else {
-					roundY = (long) (ray.getFinalY() / TILE_SIZE); // Because its a horizontal hit, the X value
-																	// shouldn't greatly affect which tile is chosen.
-				}
-				roundX = (long) (ray.getFinalX() / TILE_SIZE);
+	// Level name and a progress bar, or what went wrong
+	private void renderLoading(GraphicsContext gc) {
+		gc.setFill(Color.BLACK);
+		gc.fillRect(0, 0, WIDTH, HEIGHT);
+		gc.setFill(Color.LIMEGREEN);
+		gc.setFont(javafx.scene.text.Font.font("Arial", 24));
+		String name = levels.getEntries().get(levelIndex).getName();
+		if (levelLoadFailed) {
+			gc.fillText("Could not load " + name, WIDTH / 2 - 150, HEIGHT / 2 - 20);
+			gc.fillText("R to try again, ESC for the menu", WIDTH / 2 - 150, HEIGHT / 2 + 20);
+			return;
+		}
 
-				texX = (int) ray.getWallHitX();
-			}
+		gc.fillText("Loading " + name, WIDTH / 2 - 150, HEIGHT / 2 - 20);
+		gc.setStroke(Color.LIMEGREEN);
+		gc.strokeRect(WIDTH / 2 - 150, HEIGHT / 2, 300, 20);
+		gc.fillRect(WIDTH / 2 - 150, HEIGHT / 2, 300 * levels.getProgress(levelIndex), 20);
+	}
 
-			texX = Math.min(texX, (int) wallTexture.getWidth() - 1); // Because of this code, the goal texture has to be
-																		// the same or bigger width as the wall
-																		// texture, or the code will start attempting to
-																		// retrieve pixels out of boundaries for the
-																		// goal texture
-
-			for (int y = 0; y < wallHeight; y++) {
-				double drawY = (HEIGHT / 2) - (wallHeight / 2) + y + yOffset; // add the offset from the walking
-																				// animation
-
-				if (drawY >= 0 && drawY < HEIGHT) {
-					int texY = (int) ((y / wallHeight) * wallTexture.getHeight()); // Because of this code, the goal
-																					// texture has to be the same or
-																					// bigger height as the wall
-																					// texture, or the code will start
-																					// attempting to retrieve pixels out
-																					// of boundaries for the goal
-																					// texture
-
-					texY = Math.min(texY, (int) wallTexture.getHeight() - 1);
-
-					Color color;
-					if (map.getTile((int) roundX, (int) roundY) == 3) {
-						color = goalPixelReader.getColor(texX, texY);
-						// Because the goal and wall use the same texX and texY this means that the best
-						// way to avoid conflicts in this code is to make sure all textures are the same
-						// width and height
-					} else {
-						color = pixelReader.getColor(texX, texY);
-					}
+	/*
+	 * Swap in an edited version of the level between two ticks. The player
+	 * stays where it is and the timer keeps running. The watcher already
+	 * found which tiles differ, only those are copied (and the distance field
+	 * updated around them); if the size changed the new map replaces the old
+	 * one. Restarting with R then uses the edited start.
+	 */
+	private void applyLevelChange(LevelWatcher.Change change) {
+		Level changed = change.getLevel();
+		TileChanges tiles = change.getTiles();
+		boolean replaced = tiles == null || !map.canChangeTiles();
+		if (replaced) {
+			map.close(); // Nothing draws the old map after this
+			map = changed.getMap();
+		} else {
+			map.copyTiles(changed.getMap(), tiles);
+		}
+		level = new Level(map, changed.getStartCol(), changed.getStartRow(), changed.getPlayerAngle());
 
-					gc.setFill(color);
-					gc.fillRect(x, (int) Math.floor(drawY), pixelSize, 1);
-				}
+		if (replaced || tiles.isGoalsChanged()) { // Finding the goals reads the whole map
+			goalSprites = Sprites.onTiles(map, 3, map.getTileSize() * 0.6, 0);
+			if (!renderer.isSolidGoals()) { // Goal markers are showing
+				renderer.setSprites(goalSprites, textures.getGoalSprite());
 			}
 		}
+		recording = null; // The session no longer replays on either version of the level
+		startParSearch(changed); // The parsed copy, which nothing changes while it is searched
 	}
 
-	private void loadLevelData() {
-		try {
-			// Create a DocumentBuilderFactory
-			DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-			DocumentBuilder builder = factory.newDocumentBuilder();
-
-			// Load and parse the XML file
-			File file = new File("src/main/resources/com/perseus/raycaster/LevelData.xml");
-			Document document = builder.parse(file);
-			document.getDocumentElement().normalize(); // Normalize XML structure
-
-			// Extract grid size
-			NodeList gridSizeNode = document.getElementsByTagName("gridSize");
-			int gridSize = Integer.parseInt(gridSizeNode.item(0).getTextContent());
-
-			// Extract player angle
-			NodeList playerAngleNode = document.getElementsByTagName("playerAngle");
-			double playerAngle = Math.toRadians(Double.parseDouble(playerAngleNode.item(0).getTextContent()));
-
-			// Extract map data
-			NodeList rowNodes = document.getElementsByTagName("row");
-			int originalRows = rowNodes.getLength();
-			int originalCols = rowNodes.item(0).getTextContent().trim().split(" ").length;
-
-			// Create a new padded map
-			int[][] paddedMapData = new int[originalRows + 2][originalCols + 2];
-
-			int startCol = 0;
-			int startRow = 0;
-
-			// Fill the new map with walls (1) as padding
-			for (int i = 0; i < paddedMapData.length; i++) {
-				for (int j = 0; j < paddedMapData[i].length; j++) {
-					// Outer walls
-					if (i == 0 || j == 0 || i == paddedMapData.length - 1 || j == paddedMapData[i].length - 1) {
-						paddedMapData[i][j] = 1;
-					} else {
-						// Fill inner area with data from XML
-						String[] rowValues = rowNodes.item(i - 1).getTextContent().trim().split(" ");
-						paddedMapData[i][j] = Integer.parseInt(rowValues[j - 1]);
-
-						// Detect player start point (value 2)
-						if (paddedMapData[i][j] == 2) {
-							startCol = j;
-							startRow = i;
-						}
-					}
-				}
-			}
-
-			// Initialize map and player
-			map = new Map(paddedMapData);
-			player = new Player((startCol * TILE_SIZE + TILE_SIZE / 2), (startRow * TILE_SIZE + TILE_SIZE / 2),
-					playerAngle);
-
-			// Debug lines
-//			System.out.println("Level Data Loaded: ");
-//			System.out.println("Original Grid Size: " + gridSize);
-//			System.out.println("Padded Grid Size: " + paddedMapData.length + "x" + paddedMapData[0].length);
-//			System.out.println("Player Angle: " + playerAngle);
+	private void startParSearch(Level searched) {
+		parDistance = (searched.getMap() instanceof ChunkedMap) ? null
+				: CompletableFuture.supplyAsync(() -> PathSolver.shortestDistance(searched));
+	}
 
-		} catch (Exception e) {
-			e.printStackTrace();
+	// The par time in seconds, or -1 if it isn't known (yet)
+	private double getParTime() {
+		if (parDistance == null || !parDistance.isDone() || parDistance.isCompletedExceptionally()) {
+			return -1;
 		}
+		double distance = parDistance.join();
+		return (distance < 0) ? -1 : distance / (player.getSpeed() * TICK_RATE);
 	}
 
 	public void reloadLevelData() {
-		levelStartTime = System.nanoTime(); // Restart game timer
-		loadLevelData(); // Reload level
+		levelTicks = 0; // Restart game timer
+		tickAccumulator = 0;
+		frameStats.reset();
+		player = level.createPlayer(); // The map is kept (with any hot reloaded edits), only the player is reset
+		startRecording(); // A restart is a new session
 	}
 
 	private void returnToMenu(Stage primaryStage) {
@@ -417,6 +636,9 @@ public class Raycaster extends Application {
 		if (timer != null) {
 			timer.stop();
 		}
+		renderer.shutdown();
+		closeLevel();
+		levels.shutdown();
 		Main mainMenu = new Main();
 		try {
 			mainMenu.start(primaryStage);
@@ -0,0 +1,593 @@
+package com.perseus.raycaster;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/*
+ * The render core: casts the rays for a Map as seen by a Player and shades
+ * sky, ground and walls into a FrameBuffer. It is plain Java with no JavaFX
+ * dependency, so it can be driven by the game window as well as by
+ * benchmarks and tests that have no display.
+ */
+public class Renderer {
+    public static final int FOV = 60; // Field of View (FOV)
+
+    private final Camera camera = new Camera(1, FOV); // Per-column ray tables, rebuilt on resize
+
+    // Columns can be cast and shaded on several cores at once
+    private final int renderThreads;
+    private final ForkJoinPool renderPool;
+    private boolean parallelRendering;
+
+    private Ray.CastMode castMode = Ray.CastMode.DDA;
+
+    private Texture wallTexture;
+    private Texture goalTexture;
+    private int skyColor = 0xFF393939;
+    private int groundColor = 0xFF717171;
+
+    // Textured floor and ceiling, drawn over the flat colors when both textures are set
+    private Texture floorTexture;
+    private Texture ceilingTexture;
+    private boolean texturedFloor = true;
+
+    // Billboards drawn after walls and floor, null for none
+    private Sprites sprites;
+    private Texture[] spriteTextures = new Texture[0];
+    private boolean solidGoals = true; // False when goals are shown as sprites, rays then see past them
+
+    private FrameStats stats; // Per-phase timings, null when not measuring
+    private int columnWidth = 0; // Frame pixels per ray, 0 for the classic look of 175 rays across
+
+    // State of the frame currently being rendered, shared by all column strips
+    private Map map;
+    private Player player;
+    private FrameBuffer frame;
+    private int pixelSize;
+    private double yOffset;
+    private int displayHeight; // Height the frame is shown at, 0 if it is shown at its own size
+    private double wallHeightMultiplier;
+    private int[] wallStart = new int[0]; // Per ray column: first and one past the last screen row
+    private int[] wallEnd = new int[0]; // covered by the wall, so the floor pass can skip them
+    private double[] depth = new double[0]; // Per ray column: perpendicular distance to the wall
+
+    // Sprites that survived culling this frame, sorted far to near. Kept between frames so
+    // the order is usually already (nearly) sorted and nothing is allocated per frame
+    private int[] spriteOrder = new int[0];
+    private double[] spriteDepth = new double[0];
+
+    public Renderer(int renderThreads) {
+        this.renderThreads = Math.max(1, renderThreads);
+        this.renderPool = (this.renderThreads > 1) ? new ForkJoinPool(this.renderThreads) : null;
+        this.parallelRendering = renderPool != null;
+    }
+
+    public void render(Map map, Player player, FrameBuffer frame) {
+        this.map = map;
+        this.player = player;
+        this.frame = frame;
+
+        int width = frame.getWidth();
+        int height = frame.getHeight();
+        camera.resize(width);
+        wallHeightMultiplier = (height * 4) / 5; // Formula for the height of a wall in game
+
+        // The textured floor and ceiling cover every pixel the walls leave, so the flat fill is only needed without them
+        boolean floorTextured = texturedFloor && floorTexture != null && ceilingTexture != null;
+        if (!floorTextured) {
+            long fillStart = (stats != null) ? System.nanoTime() : 0;
+            frame.fillRows(0, height / 2, skyColor); // Set top half to sky color
+            frame.fillRows(height / 2, height, groundColor); // Set bottom half to ground color
+            if (stats != null) {
+                stats.add(FrameStats.Phase.FILL, System.nanoTime() - fillStart);
+            }
+        }
+
+        castRays(); // Render walls
+
+        if (floorTextured) {
+            long floorStart = (stats != null) ? System.nanoTime() : 0;
+            if (parallelRendering && renderPool != null) {
+                renderPool.invoke(new RowStrip(0, height));
+            } else {
+                castFloor(0, height);
+            }
+            if (stats != null) {
+                stats.add(FrameStats.Phase.FLOOR, System.nanoTime() - floorStart);
+            }
+        }
+
+        if (sprites != null && sprites.getCount() > 0) {
+            long spriteStart = (stats != null) ? System.nanoTime() : 0;
+            drawSprites();
+            if (stats != null) {
+                stats.add(FrameStats.Phase.SPRITES, System.nanoTime() - spriteStart);
+            }
+        }
+    }
+
+    private void castRays() {
+
+        /*
+         * the castRays method works by using a for loop to cast a certain amount of
+         * rays on the screen, the rays will travel forward until they hit a wall or
+         * goal. Once this has been reached, another for loop will start, this time for
+         * the vertical component.
+         *
+         * Everything that only depends on the column (texture, mip level, texture
+         * column and the texture step per screen row) is worked out once per ray, so
+         * the inner loop only walks down the texel array and writes into the frame
+         * buffer one artificial pixel at a time
+         */
+
+        int width = frame.getWidth();
+        pixelSize = (columnWidth > 0) ? columnWidth : Math.max(1, width / 175);
+        // The denominator represents how many rays will be cast
+        // lower number = more artificially pixelated
+
+        yOffset = player.getAnimationOffset(); // Walking animation height offset, in display pixels
+        if (displayHeight > 0 && displayHeight != frame.getHeight()) {
+            yOffset *= frame.getHeight() / (double) displayHeight; // A scaled down frame gets a scaled down bob
+        }
+
+        int columns = (width + pixelSize - 1) / pixelSize;
+        if (wallStart.length != columns) {
+            wallStart = new int[columns];
+            wallEnd = new int[columns];
+            depth = new double[columns];
+        }
+
+        if (parallelRendering && renderPool != null) {
+            // Every column only writes its own pixels, so strips can be rendered in any order
+            // and the frame comes out identical to the single-threaded one
+            renderPool.invoke(new ColumnStrip(0, columns));
+        } else {
+            castColumns(0, columns);
+        }
+    }
+
+    // Cast and draw the artificial pixel columns [fromColumn, toColumn)
+    private void castColumns(int fromColumn, int toColumn) {
+        int width = frame.getWidth();
+        int height = frame.getHeight();
+        double viewCos = player.getAngleCos();
+        double viewSin = player.getAngleSin();
+        Ray ray = new Ray(viewCos, viewSin); // One ray, re-aimed for every column
+        ray.setSolidGoals(solidGoals);
+
+        // Time spent casting and shading, handed to the stats once for the whole strip
+        boolean timed = stats != null;
+        long castNanos = 0;
+        long shadeNanos = 0;
+        long phaseStart = timed ? System.nanoTime() : 0;
+
+        for (int column = fromColumn; column < toColumn; column++) { // For every artificial pixel
+            int x = column * pixelSize;
+            if (x >= width) {
+                break;
+            }
+            ray.setDirection(camera.getRayDirX(x, viewCos, viewSin), camera.getRayDirY(x, viewCos, viewSin));
+            ray.cast(map, player, castMode); // Cast ray through this column
+            if (timed) {
+                long now = System.nanoTime();
+                castNanos += now - phaseStart;
+                phaseStart = now;
+            }
+
+            double distance = ray.getDistance() * camera.getCorrection(x); // Get perpendicular distance between
+                                                                            // player and wall (no fisheye)
+
+            depth[column] = distance; // Sprites further away than this are hidden by the wall
+
+            double wallHeight = (map.getTileSize() / distance) * wallHeightMultiplier; // Find wall Height
+
+            // The ray reports the exact tile it hit, so the texture is picked once per column.
+            // Each texture uses its own size, so the goal texture no longer has to match the wall
+            Texture texture = (map.getTile(ray.getHitTileX(), ray.getHitTileY()) == 3) ? goalTexture : wallTexture;
+            int level = texture.levelFor(wallHeight);
+            int[] texels = texture.getTexels(level);
+            int texWidth = texture.getWidth(level);
+            int texHeight = texture.getHeight(level);
+
+            int texX = Math.min((int) (ray.getTextureOffset() * texWidth), texWidth - 1);
+            double texStep = texHeight / wallHeight; // Texture rows per screen row
+
+            double wallTop = (height / 2) - (wallHeight / 2) + yOffset; // add the offset from the walking animation
+
+            // Only walk the part of the wall that is on screen
+            int firstY = (int) Math.max(0, Math.ceil(-wallTop));
+            double lastY = Math.min(wallHeight, height - wallTop);
+
+            double texPos = firstY * texStep;
+            for (int y = firstY; y < lastY; y++) {
+                int texY = Math.min((int) texPos, texHeight - 1);
+                texPos += texStep;
+
+                frame.fillSpan(x, (int) Math.floor(wallTop + y), pixelSize, texels[texY * texWidth + texX]);
+            }
+
+            // Remember which rows the wall took, the floor pass draws around them
+            if (firstY < lastY) {
+                wallStart[column] = (int) Math.floor(wallTop + firstY);
+                wallEnd[column] = (int) Math.floor(wallTop + Math.ceil(lastY) - 1) + 1;
+            } else {
+                wallStart[column] = wallEnd[column] = (int) ((height / 2) + yOffset);
+            }
+            if (timed) {
+                long now = System.nanoTime();
+                shadeNanos += now - phaseStart;
+                phaseStart = now;
+            }
+        }
+
+        if (timed) {
+            stats.add(FrameStats.Phase.CAST, castNanos);
+            stats.add(FrameStats.Phase.SHADE, shadeNanos);
+        }
+    }
+
+    /*
+     * Floor and ceiling for the screen rows [fromRow, toRow), one row at a time.
+     *
+     * A floor pixel in screen row y shows the floor at the perpendicular
+     * distance where a wall would have its bottom edge on that row, so the
+     * distance, the mip level and the world position straight ahead only
+     * depend on the row. Along the row the position only moves sideways, by
+     * that distance times the column's tangent (see Camera.getOffsetTan), so
+     * every pixel is a multiply-add and a texel lookup. Rows above the horizon
+     * are the ceiling, mirrored. Pixels the walls already covered are skipped.
+     */
+    private void castFloor(int fromRow, int toRow) {
+        int width = frame.getWidth();
+        int columns = (width + pixelSize - 1) / pixelSize;
+        int[] pixels = frame.getPixels();
+        double horizon = (frame.getHeight() / 2) + yOffset; // Same eye height the walls are drawn with
+        double tileSize = map.getTileSize();
+        double viewCos = player.getAngleCos();
+        double viewSin = player.getAngleSin();
+        double playerX = player.getX();
+        double playerY = player.getY();
+
+        for (int y = fromRow; y < toRow; y++) {
+            double rowCenter = y + 0.5;
+            boolean floor = rowCenter > horizon;
+            double fromHorizon = floor ? rowCenter - horizon : horizon - rowCenter;
+            if (fromHorizon < 0.5) {
+                fillHorizon(y, floor, columns); // The horizon itself is infinitely far away
+                continue;
+            }
+
+            double distance = tileSize * wallHeightMultiplier / (2 * fromHorizon);
+            Texture texture = floor ? floorTexture : ceilingTexture;
+            int level = texture.levelFor(tileSize / distance * wallHeightMultiplier);
+            int[] texels = texture.getTexels(level);
+            int texWidth = texture.getWidth(level);
+            int texHeight = texture.getHeight(level);
+            double texScaleX = texWidth / tileSize;
+            double texScaleY = texHeight / tileSize;
+
+            // World position straight ahead at this distance, and the sideways direction
+            double aheadX = playerX + distance * viewCos;
+            double aheadY = playerY + distance * viewSin;
+            double sideX = -distance * viewSin;
+            double sideY = distance * viewCos;
+
+            // Power of two textures (the usual case) wrap with a mask instead of a division
+            boolean wrapByMask = Integer.bitCount(texWidth) == 1 && Integer.bitCount(texHeight) == 1;
+            int rowOffset = y * width;
+
+            for (int column = 0; column < columns; column++) {
+                if (floor ? y < wallEnd[column] : y >= wallStart[column]) {
+                    continue; // Behind the wall of this column
+                }
+                int x = column * pixelSize;
+                double tan = camera.getOffsetTan(x);
+
+                int texX = (int) ((aheadX + tan * sideX) * texScaleX);
+                int texY = (int) ((aheadY + tan * sideY) * texScaleY);
+                if (wrapByMask) {
+                    texX &= texWidth - 1;
+                    texY &= texHeight - 1;
+                } else {
+                    texX = Math.floorMod(texX, texWidth);
+                    texY = Math.floorMod(texY, texHeight);
+                }
+                int texel = texels[texY * texWidth + texX];
+
+                // Spans are a few pixels at most, written directly instead of through fillSpan
+                int end = rowOffset + Math.min(x + pixelSize, width);
+                for (int i = rowOffset + x; i < end; i++) {
+                    pixels[i] = texel;
+                }
+            }
+        }
+    }
+
+    // Sky color on the pixels of the horizon row the walls didn't cover
+    private void fillHorizon(int y, boolean floor, int columns) {
+        int width = frame.getWidth();
+        int[] pixels = frame.getPixels();
+        int rowOffset = y * width;
+        for (int column = 0; column < columns; column++) {
+            if (floor ? y < wallEnd[column] : y >= wallStart[column]) {
+                continue; // Behind the wall of this column
+            }
+            int x = column * pixelSize;
+            Arrays.fill(pixels, rowOffset + x, rowOffset + Math.min(x + pixelSize, width), skyColor);
+        }
+    }
+
+    /*
+     * Billboard sprites. Every sprite is first moved into view space (distance
+     * ahead, offset to the side), and anything behind the player, outside the
+     * field of view or hidden behind the walls of every column it spans is
+     * dropped before any pixel is touched. What is left is drawn far to near,
+     * one column at a time, skipping columns whose wall is closer and texels
+     * that are transparent. Sprites stand on the floor and are as wide as
+     * they are tall.
+     */
+    private void drawSprites() {
+        int width = frame.getWidth();
+        int height = frame.getHeight();
+        int columns = (width + pixelSize - 1) / pixelSize;
+        int[] pixels = frame.getPixels();
+        double viewCos = player.getAngleCos();
+        double viewSin = player.getAngleSin();
+        double halfFov = Math.toRadians(camera.getFieldOfView()) / 2;
+        double columnsPerRadian = width / (2 * halfFov);
+        double horizon = (height / 2) + yOffset;
+        double tileSize = map.getTileSize();
+
+        int count = sprites.getCount();
+        if (spriteOrder.length < count) {
+            spriteOrder = new int[count];
+            spriteDepth = new double[count];
+        }
+
+        // Cull and collect the visible sprites
+        int visible = 0;
+        for (int sprite = 0; sprite < count; sprite++) {
+            double dx = sprites.getX(sprite) - player.getX();
+            double dy = sprites.getY(sprite) - player.getY();
+            double ahead = dx * viewCos + dy * viewSin;
+            if (ahead < 1) {
+                continue; // Behind the player (or standing in it)
+            }
+            double side = dy * viewCos - dx * viewSin;
+
+            double spriteSize = sprites.getSize(sprite) / ahead * wallHeightMultiplier; // On screen
+            double centerX = (Math.atan2(side, ahead) + halfFov) * columnsPerRadian;
+            int firstColumn = Math.max(0, (int) Math.floor((centerX - spriteSize / 2) / pixelSize));
+            int lastColumn = Math.min(columns - 1, (int) Math.floor((centerX + spriteSize / 2) / pixelSize));
+            if (firstColumn > lastColumn) {
+                continue; // Outside the field of view
+            }
+
+            boolean inFront = false;
+            for (int column = firstColumn; column <= lastColumn && !inFront; column++) {
+                inFront = depth[column] > ahead;
+            }
+            if (!inFront) {
+                continue; // Every column it would cover has a closer wall
+            }
+
+            spriteOrder[visible] = sprite;
+            spriteDepth[visible] = ahead;
+            visible++;
+        }
+
+        // Far to near, so nearer sprites are drawn over further ones. Insertion sort, which is
+        // close to linear when the order barely changed since the last frame
+        for (int i = 1; i < visible; i++) {
+            int sprite = spriteOrder[i];
+            double ahead = spriteDepth[i];
+            int j = i - 1;
+            while (j >= 0 && spriteDepth[j] < ahead) {
+                spriteOrder[j + 1] = spriteOrder[j];
+                spriteDepth[j + 1] = spriteDepth[j];
+                j--;
+            }
+            spriteOrder[j + 1] = sprite;
+            spriteDepth[j + 1] = ahead;
+        }
+
+        for (int i = 0; i < visible; i++) {
+            int sprite = spriteOrder[i];
+            double ahead = spriteDepth[i];
+            double dx = sprites.getX(sprite) - player.getX();
+            double dy = sprites.getY(sprite) - player.getY();
+            double side = dy * viewCos - dx * viewSin;
+
+            double spriteSize = sprites.getSize(sprite) / ahead * wallHeightMultiplier;
+            double left = (Math.atan2(side, ahead) + halfFov) * columnsPerRadian - spriteSize / 2;
+            double bottom = horizon + (tileSize / ahead * wallHeightMultiplier) / 2; // On the floor
+            double top = bottom - spriteSize;
+
+            Texture texture = spriteTextures[sprites.getTexture(sprite)];
+            int level = texture.levelFor(spriteSize);
+            int[] texels = texture.getTexels(level);
+            int texWidth = texture.getWidth(level);
+            int texHeight = texture.getHeight(level);
+            double texStep = texHeight / spriteSize;
+
+            int firstY = (int) Math.max(0, Math.ceil(top));
+            int lastY = (int) Math.min(height, Math.ceil(bottom));
+            int firstColumn = Math.max(0, (int) Math.floor(left / pixelSize));
+            int lastColumn = Math.min(columns - 1, (int) Math.floor((left + spriteSize) / pixelSize));
+
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                if (depth[column] <= ahead) {
+                    continue; // The wall in this column is in front of the sprite
+                }
+                int x = column * pixelSize;
+                int texX = (int) ((x + pixelSize / 2.0 - left) / spriteSize * texWidth);
+                if (texX < 0 || texX >= texWidth) {
+                    continue;
+                }
+                int end = Math.min(x + pixelSize, width);
+
+                double texPos = (firstY - top) * texStep;
+                for (int y = firstY; y < lastY; y++) {
+                    int texY = Math.min((int) texPos, texHeight - 1);
+                    texPos += texStep;
+                    int texel = texels[texY * texWidth + texX];
+                    if ((texel >>> 24) < 128) {
+                        continue; // Transparent
+                    }
+                    int rowOffset = y * width;
+                    for (int p = rowOffset + x; p < rowOffset + end; p++) {
+                        pixels[p] = texel | 0xFF000000;
+                    }
+                }
+            }
+        }
+    }
+
+    // Splits a range of columns in half until it is small enough to render directly
+    private class ColumnStrip extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int fromColumn;
+        private final int toColumn;
+
+        ColumnStrip(int fromColumn, int toColumn) {
+            this.fromColumn = fromColumn;
+            this.toColumn = toColumn;
+        }
+
+        @Override
+        protected void compute() {
+            // Aim for a few strips per worker so uneven columns still balance out
+            int minStrip = Math.max(4, (frame.getWidth() / pixelSize) / (renderThreads * 4));
+            if (toColumn - fromColumn <= minStrip) {
+                castColumns(fromColumn, toColumn);
+            } else {
+                int middle = (fromColumn + toColumn) >>> 1;
+                invokeAll(new ColumnStrip(fromColumn, middle), new ColumnStrip(middle, toColumn));
+            }
+        }
+    }
+
+    // Splits a range of screen rows in half until it is small enough to render directly
+    private class RowStrip extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int fromRow;
+        private final int toRow;
+
+        RowStrip(int fromRow, int toRow) {
+            this.fromRow = fromRow;
+            this.toRow = toRow;
+        }
+
+        @Override
+        protected void compute() {
+            int minStrip = Math.max(8, frame.getHeight() / (renderThreads * 4));
+            if (toRow - fromRow <= minStrip) {
+                castFloor(fromRow, toRow);
+            } else {
+                int middle = (fromRow + toRow) >>> 1;
+                invokeAll(new RowStrip(fromRow, middle), new RowStrip(middle, toRow));
+            }
+        }
+    }
+
+    public void setWallTexture(Texture wallTexture) {
+        this.wallTexture = wallTexture;
+    }
+
+    public void setGoalTexture(Texture goalTexture) {
+        this.goalTexture = goalTexture;
+    }
+
+    // Textures for the floor and the ceiling, null for the flat ground and sky colors
+    public void setFloorTextures(Texture floorTexture, Texture ceilingTexture) {
+        this.floorTexture = floorTexture;
+        this.ceilingTexture = ceilingTexture;
+    }
+
+    // Sprites to draw every frame (null for none); their texture numbers index into textures
+    public void setSprites(Sprites sprites, Texture... textures) {
+        this.sprites = sprites;
+        this.spriteTextures = textures;
+    }
+
+    public boolean isSolidGoals() {
+        return solidGoals;
+    }
+
+    // False lets rays pass through goal tiles, for when goals are drawn as sprites instead
+    public void setSolidGoals(boolean solidGoals) {
+        this.solidGoals = solidGoals;
+    }
+
+    public boolean isTexturedFloor() {
+        return texturedFloor;
+    }
+
+    // Switch between the textured floor and ceiling and the flat colors
+    public void setTexturedFloor(boolean texturedFloor) {
+        this.texturedFloor = texturedFloor;
+    }
+
+    public void setColors(int skyColor, int groundColor) {
+        this.skyColor = skyColor;
+        this.groundColor = groundColor;
+    }
+
+    /*
+     * The height in screen pixels the frame is stretched to when it is drawn,
+     * when that isn't the frame's own height (dynamic resolution), so the
+     * walking bob keeps its size on screen. 0 for frames shown as they are.
+     */
+    public void setDisplayHeight(int displayHeight) {
+        this.displayHeight = Math.max(0, displayHeight);
+    }
+
+    // Record fill, cast and shade times of every frame into stats (null to stop)
+    public void setFrameStats(FrameStats stats) {
+        this.stats = stats;
+    }
+
+    public int getColumnWidth() {
+        return columnWidth;
+    }
+
+    // How many frame pixels wide every ray's column is, 0 to use about 175 rays for any width
+    public void setColumnWidth(int columnWidth) {
+        this.columnWidth = Math.max(0, columnWidth);
+    }
+
+    public Ray.CastMode getCastMode() {
+        return castMode;
+    }
+
+    public void setCastMode(Ray.CastMode castMode) {
+        this.castMode = castMode;
+    }
+
+    public boolean isParallelRendering() {
+        return parallelRendering;
+    }
+
+    // Only takes effect when the renderer was created with more than one thread
+    public void setParallelRendering(boolean parallelRendering) {
+        this.parallelRendering = parallelRendering;
+    }
+
+    public int getRenderThreads() {
+        return renderThreads;
+    }
+
+    public Camera getCamera() {
+        return camera;
+    }
+
+    // Release the worker threads once the renderer is no longer needed
+    public void shutdown() {
+        if (renderPool != null) {
+            renderPool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.perseus.raycaster;
+
+/*
+ * Picks the resolution the frame is rendered at so that rendering stays
+ * within a frame time budget. The frame is then scaled up to the window.
+ *
+ * The scale applies to both axes, so it sets the number of rays (one per
+ * column of the smaller frame) as well as the number of rows shaded per
+ * column. It moves between fixed steps so the frame buffer is only
+ * re-allocated when the scale really changes, and it has hysteresis:
+ * it drops as soon as frames are clearly over budget, but only goes back up
+ * after frames have been comfortably under budget for a while, and only if
+ * the next step up is expected to fit as well. After every change the
+ * measurements start over, so the new resolution is judged on its own frames.
+ */
+public class ResolutionController {
+    public static final double MIN_SCALE = 0.25;
+    public static final double MAX_SCALE = 1.0;
+    private static final double STEP = 1.0 / 16;
+
+    private static final double SMOOTHING = 0.1; // Weight of the newest frame in the average
+    private static final int SETTLE_FRAMES = 10; // Frames to measure before any decision
+    private static final int RAISE_FRAMES = 60; // Frames under budget before going up a step
+    private static final double OVER_BUDGET = 1.1; // Average above target * this: go down
+    private static final double RAISE_MARGIN = 0.85; // Next step up must be expected below target * this
+
+    private long targetNanos;
+    private double scale = MAX_SCALE;
+    private double averageNanos;
+    private int frames; // Frames measured at the current scale
+    private int framesUnderBudget;
+
+    public ResolutionController(long targetNanos) {
+        setTargetNanos(targetNanos);
+    }
+
+    /*
+     * Feed the time it took to render the last frame. Returns true if the
+     * scale changed, meaning the next frame should use the new size.
+     */
+    public boolean update(long frameNanos) {
+        averageNanos = (frames == 0) ? frameNanos : averageNanos + (frameNanos - averageNanos) * SMOOTHING;
+        frames++;
+        if (frames < SETTLE_FRAMES) {
+            return false;
+        }
+
+        if (averageNanos > targetNanos * OVER_BUDGET && scale > MIN_SCALE) {
+            // Most of the cost grows with the pixel count, i.e. with scale squared, so jump
+            // straight to the step that should fit instead of walking down one by one
+            double fitting = scale * Math.sqrt(targetNanos / averageNanos);
+            return setScale(Math.min(scale - STEP, Math.floor(fitting / STEP) * STEP));
+        }
+
+        double next = scale + STEP;
+        double expected = averageNanos * (next * next) / (scale * scale);
+        if (scale < MAX_SCALE && expected < targetNanos * RAISE_MARGIN) {
+            if (++framesUnderBudget >= RAISE_FRAMES) {
+                return setScale(next);
+            }
+        } else {
+            framesUnderBudget = 0;
+        }
+        return false;
+    }
+
+    private boolean setScale(double newScale) {
+        newScale = Math.max(MIN_SCALE, Math.min(MAX_SCALE, newScale));
+        frames = 0;
+        framesUnderBudget = 0;
+        if (newScale == scale) {
+            return false;
+        }
+        scale = newScale;
+        return true;
+    }
+
+    // Back to full resolution, for example when the controller is switched back on
+    public void reset() {
+        setScale(MAX_SCALE);
+        frames = 0;
+    }
+
+    public double getScale() {
+        return scale;
+    }
+
+    public long getTargetNanos() {
+        return targetNanos;
+    }
+
+    public void setTargetNanos(long targetNanos) {
+        if (targetNanos <= 0) {
+            throw new IllegalArgumentException("Frame time target must be positive: " + targetNanos);
+        }
+        this.targetNanos = targetNanos;
+    }
+}
@@ -0,0 +1,77 @@
+package com.perseus.raycaster;
+
+import java.util.Arrays;
+
+/*
+ * Billboard sprites: things drawn as a camera-facing picture standing on the
+ * floor, like goal markers or pickups. Sprites are kept as parallel arrays
+ * (one array per property) instead of one object per sprite, so adding,
+ * moving or rendering hundreds of them doesn't allocate anything except when
+ * the arrays have to grow.
+ */
+public class Sprites {
+    private double[] x = new double[16]; // World position of the sprite's foot
+    private double[] y = new double[16];
+    private double[] size = new double[16]; // Width and height in world units
+    private int[] texture = new int[16]; // Index into the renderer's sprite textures
+    private int count;
+
+    // Add a sprite and return its index
+    public int add(double x, double y, double size, int texture) {
+        if (count == this.x.length) {
+            int capacity = count * 2;
+            this.x = Arrays.copyOf(this.x, capacity);
+            this.y = Arrays.copyOf(this.y, capacity);
+            this.size = Arrays.copyOf(this.size, capacity);
+            this.texture = Arrays.copyOf(this.texture, capacity);
+        }
+        this.x[count] = x;
+        this.y[count] = y;
+        this.size[count] = size;
+        this.texture[count] = texture;
+        return count++;
+    }
+
+    // A sprite in the middle of every tile with the given value, e.g. a marker on every goal
+    public static Sprites onTiles(Map map, int tile, double size, int texture) {
+        Sprites sprites = new Sprites();
+        int tileSize = map.getTileSize();
+        for (int row = 0; row < map.getHeight(); row++) {
+            for (int col = 0; col < map.getWidth(); col++) {
+                if (map.getTile(col, row) == tile) {
+                    sprites.add((col + 0.5) * tileSize, (row + 0.5) * tileSize, size, texture);
+                }
+            }
+        }
+        return sprites;
+    }
+
+    public void setPosition(int sprite, double x, double y) {
+        this.x[sprite] = x;
+        this.y[sprite] = y;
+    }
+
+    public void clear() {
+        count = 0;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public double getX(int sprite) {
+        return x[sprite];
+    }
+
+    public double getY(int sprite) {
+        return y[sprite];
+    }
+
+    public double getSize(int sprite) {
+        return size[sprite];
+    }
+
+    public int getTexture(int sprite) {
+        return texture[sprite];
+    }
+}
@@ -0,0 +1,149 @@
+package com.perseus.raycaster;
+
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelFormat;
+
+/*
+ * A texture decoded once into packed ARGB int arrays, together with a chain of
+ * mip levels where each level is half the size of the one before it. Far away
+ * walls sample a smaller level, which is both cheaper and less noisy than
+ * skipping over texels of the full size image.
+ *
+ * Textures are opaque unless created with transparency (sprites); only
+ * those keep the alpha of their texels.
+ */
+public class Texture {
+    private final int[][] levels; // Texels of each mip level, row-major
+    private final int[] widths;
+    private final int[] heights;
+    private final boolean opaque;
+
+    public Texture(int[] argb, int width, int height) {
+        this(argb, width, height, true);
+    }
+
+    public Texture(int[] argb, int width, int height, boolean opaque) {
+        this.opaque = opaque;
+
+        // Count how many times the texture can be halved
+        int count = 1;
+        for (int w = width, h = height; w > 1 && h > 1; w /= 2, h /= 2) {
+            count++;
+        }
+
+        levels = new int[count][];
+        widths = new int[count];
+        heights = new int[count];
+
+        levels[0] = new int[width * height];
+        for (int i = 0; i < levels[0].length; i++) {
+            levels[0][i] = opaque ? 0xFF000000 | argb[i] : argb[i];
+        }
+        widths[0] = width;
+        heights[0] = height;
+
+        for (int level = 1; level < count; level++) {
+            downsample(level);
+        }
+    }
+
+    // Decode a JavaFX image into a texture
+    public static Texture fromImage(Image image) {
+        int width = (int) image.getWidth();
+        int height = (int) image.getHeight();
+        int[] argb = new int[width * height];
+        image.getPixelReader().getPixels(0, 0, width, height, PixelFormat.getIntArgbInstance(), argb, 0, width);
+        return new Texture(argb, width, height);
+    }
+
+    // Build a level by averaging each 2x2 block of the level above it
+    private void downsample(int level) {
+        int[] src = levels[level - 1];
+        int srcWidth = widths[level - 1];
+        int width = srcWidth / 2;
+        int height = heights[level - 1] / 2;
+        int[] dst = new int[width * height];
+
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int i = (2 * y) * srcWidth + 2 * x;
+                int a = src[i];
+                int b = src[i + 1];
+                int c = src[i + srcWidth];
+                int d = src[i + srcWidth + 1];
+
+                int r = (((a >> 16) & 0xFF) + ((b >> 16) & 0xFF) + ((c >> 16) & 0xFF) + ((d >> 16) & 0xFF) + 2) >> 2;
+                int g = (((a >> 8) & 0xFF) + ((b >> 8) & 0xFF) + ((c >> 8) & 0xFF) + ((d >> 8) & 0xFF) + 2) >> 2;
+                int bl = ((a & 0xFF) + (b & 0xFF) + (c & 0xFF) + (d & 0xFF) + 2) >> 2;
+                int al = opaque ? 0xFF : ((a >>> 24) + (b >>> 24) + (c >>> 24) + (d >>> 24) + 2) >> 2;
+                dst[y * width + x] = (al << 24) | (r << 16) | (g << 8) | bl;
+            }
+        }
+
+        levels[level] = dst;
+        widths[level] = width;
+        heights[level] = height;
+    }
+
+    /*
+     * A copy of this texture recolored to the given color: every texel keeps
+     * its brightness relative to the texture's average, so the copy averages
+     * out to the color but still shows the texture's pattern. Used to turn a
+     * wall texture into a matching floor or ceiling.
+     */
+    public Texture modulate(int argb) {
+        int[] src = levels[0];
+        double total = 0;
+        for (int texel : src) {
+            total += luma(texel);
+        }
+        double average = Math.max(1, total / src.length);
+
+        int r = (argb >> 16) & 0xFF;
+        int g = (argb >> 8) & 0xFF;
+        int b = argb & 0xFF;
+        int[] dst = new int[src.length];
+        for (int i = 0; i < src.length; i++) {
+            double factor = luma(src[i]) / average;
+            dst[i] = 0xFF000000 | (clamp(r * factor) << 16) | (clamp(g * factor) << 8) | clamp(b * factor);
+        }
+        return new Texture(dst, widths[0], heights[0]);
+    }
+
+    private static double luma(int argb) {
+        return 0.299 * ((argb >> 16) & 0xFF) + 0.587 * ((argb >> 8) & 0xFF) + 0.114 * (argb & 0xFF);
+    }
+
+    private static int clamp(double channel) {
+        return (int) Math.min(255, Math.max(0, Math.round(channel)));
+    }
+
+    // Pick the smallest level that still has at least one texel row per screen pixel
+    public int levelFor(double screenHeight) {
+        int level = 0;
+        while (level + 1 < levels.length && heights[level + 1] >= screenHeight) {
+            level++;
+        }
+        return level;
+    }
+
+    public int[] getTexels(int level) {
+        return levels[level];
+    }
+
+    public int getWidth(int level) {
+        return widths[level];
+    }
+
+    public int getHeight(int level) {
+        return heights[level];
+    }
+
+    public boolean isOpaque() {
+        return opaque;
+    }
+
+    public int getLevelCount() {
+        return levels.length;
+    }
+}
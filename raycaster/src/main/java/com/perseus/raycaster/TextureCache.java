@@ -0,0 +1,139 @@
+package com.perseus.raycaster;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import javafx.scene.image.Image;
+
+/*
+ * Decodes every wall style and the goal texture exactly once. Loading starts
+ * in the background as soon as the game starts (see Main) and the pngs are
+ * decoded in parallel, so by the time a level is played switching styles is
+ * just picking another already decoded texture.
+ *
+ * Every style also has a floor and a ceiling texture, made from its wall
+ * texture recolored to the style's ground and sky colors.
+ */
+public class TextureCache {
+    private static final String TEXTURE_PATH = "/com/perseus/raycaster/textures/";
+
+    // The styles cycled through with F: wall texture, sky color, ground color
+    private static final String[] WALL_TEXTURES = { "wall_texture.png", "cool_wall_texture.png", "backrooms.png" };
+    private static final int[] SKY_COLORS = { 0xFF393939, 0xFF000000, 0xFF766B1B };
+    private static final int[] GROUND_COLORS = { 0xFF717171, 0xFF000000, 0xFFAFA232 };
+
+    private static CompletableFuture<TextureCache> loading;
+
+    private final Texture[] wallTextures;
+    private final Texture[] floorTextures;
+    private final Texture[] ceilingTextures;
+    private final Texture goalTexture;
+    private final Texture goalSprite; // Round cut-out of the goal texture, for goal markers
+
+    private TextureCache(Texture[] wallTextures, Texture goalTexture) {
+        this.wallTextures = wallTextures;
+        this.goalTexture = goalTexture;
+        this.goalSprite = roundSprite(goalTexture);
+
+        floorTextures = new Texture[wallTextures.length];
+        ceilingTextures = new Texture[wallTextures.length];
+        for (int style = 0; style < wallTextures.length; style++) {
+            floorTextures[style] = wallTextures[style].modulate(GROUND_COLORS[style]);
+            ceilingTextures[style] = wallTextures[style].modulate(SKY_COLORS[style]);
+        }
+    }
+
+    // Start decoding all textures off the calling thread. Calling this again returns the same load
+    public static synchronized CompletableFuture<TextureCache> preload() {
+        if (loading == null) {
+            List<CompletableFuture<Texture>> walls = new ArrayList<>();
+            for (String name : WALL_TEXTURES) {
+                walls.add(CompletableFuture.supplyAsync(() -> decode(name)));
+            }
+            CompletableFuture<Texture> goal = CompletableFuture.supplyAsync(() -> decode("goal.png"));
+
+            CompletableFuture<Void> allWalls = CompletableFuture.allOf(walls.toArray(new CompletableFuture<?>[0]));
+            loading = allWalls.thenCombine(goal, (ignored, goalTexture) -> {
+                Texture[] wallTextures = new Texture[walls.size()];
+                for (int i = 0; i < wallTextures.length; i++) {
+                    wallTextures[i] = walls.get(i).join();
+                }
+                return new TextureCache(wallTextures, goalTexture);
+            });
+        }
+        return loading;
+    }
+
+    // The loaded textures, waiting for the background load if it hasn't finished yet
+    public static TextureCache get() {
+        return preload().join();
+    }
+
+    // Everything outside the circle that fits the texture becomes transparent
+    private static Texture roundSprite(Texture texture) {
+        int width = texture.getWidth(0);
+        int height = texture.getHeight(0);
+        int[] texels = texture.getTexels(0);
+        int[] argb = new int[width * height];
+        double radius = Math.min(width, height) / 2.0;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                double dx = x + 0.5 - width / 2.0;
+                double dy = y + 0.5 - height / 2.0;
+                boolean inside = dx * dx + dy * dy <= radius * radius;
+                argb[y * width + x] = inside ? texels[y * width + x] : 0;
+            }
+        }
+        return new Texture(argb, width, height, false);
+    }
+
+    private static Texture decode(String name) {
+        try (InputStream in = TextureCache.class.getResourceAsStream(TEXTURE_PATH + name)) {
+            if (in == null) {
+                throw new IllegalStateException("Missing texture " + name);
+            }
+            Image image = new Image(in);
+            if (image.isError()) {
+                throw new IllegalStateException("Could not decode texture " + name, image.getException());
+            }
+            return Texture.fromImage(image);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not read texture " + name, e);
+        }
+    }
+
+    public int getStyleCount() {
+        return wallTextures.length;
+    }
+
+    public Texture getWallTexture(int style) {
+        return wallTextures[style];
+    }
+
+    public Texture getFloorTexture(int style) {
+        return floorTextures[style];
+    }
+
+    public Texture getCeilingTexture(int style) {
+        return ceilingTextures[style];
+    }
+
+    public int getSkyColor(int style) {
+        return SKY_COLORS[style];
+    }
+
+    public int getGroundColor(int style) {
+        return GROUND_COLORS[style];
+    }
+
+    public Texture getGoalTexture() {
+        return goalTexture;
+    }
+
+    public Texture getGoalSprite() {
+        return goalSprite;
+    }
+}
@@ -0,0 +1,86 @@
+package com.perseus.raycaster;
+
+import java.util.Arrays;
+
+/*
+ * The tiles that differ between two versions of a map of the same size, as
+ * indices into the row-major tiles plus the box around them. Finding them
+ * means reading both maps in full, so this is done off the game thread (see
+ * LevelWatcher) and the game only copies the listed tiles over (see
+ * Map.copyTiles).
+ */
+public class TileChanges {
+    private int[] indices = new int[64];
+    private int count;
+    private int minX;
+    private int minY;
+    private int maxX = -1;
+    private int maxY = -1;
+    private boolean goalsChanged; // Whether a tile became or stopped being a goal
+
+    private TileChanges() {
+    }
+
+    // The tiles of to that differ from from, or null if the maps aren't the same size
+    public static TileChanges between(Map from, Map to) {
+        int width = from.getWidth();
+        int height = from.getHeight();
+        if (to.getWidth() != width || to.getHeight() != height || to.getTileSize() != from.getTileSize()) {
+            return null;
+        }
+        TileChanges changes = new TileChanges();
+        changes.minX = width;
+        changes.minY = height;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int before = from.getTile(x, y);
+                int after = to.getTile(x, y);
+                if (before != after) {
+                    changes.add(x, y, width);
+                    changes.goalsChanged |= (before == 3 || after == 3);
+                }
+            }
+        }
+        return changes;
+    }
+
+    private void add(int x, int y, int width) {
+        if (count == indices.length) {
+            indices = Arrays.copyOf(indices, count * 2);
+        }
+        indices[count++] = y * width + x;
+        minX = Math.min(minX, x);
+        minY = Math.min(minY, y);
+        maxX = Math.max(maxX, x);
+        maxY = Math.max(maxY, y);
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    // Index (y * width + x) of the i-th changed tile
+    public int getIndex(int i) {
+        return indices[i];
+    }
+
+    public int getMinX() {
+        return minX;
+    }
+
+    public int getMinY() {
+        return minY;
+    }
+
+    public int getMaxX() {
+        return maxX;
+    }
+
+    public int getMaxY() {
+        return maxY;
+    }
+
+    public boolean isGoalsChanged() {
+        return goalsChanged;
+    }
+}
@@ -0,0 +1,49 @@
+package com.perseus.raycaster;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+// Updating the field around changed tiles must give the field a rebuild would
+class DistanceFieldTest {
+
+    // Big enough for the update to work on a window of the map
+    @Test
+    void updateMatchesRebuildOnALargeMap() {
+        checkEdits(1536, 12, 40);
+    }
+
+    // So small that the update falls back to rebuilding
+    @Test
+    void updateMatchesRebuildOnASmallMap() {
+        checkEdits(64, 20, 10);
+    }
+
+    private static void checkEdits(int size, int edits, int maxBox) {
+        Random random = new Random(7);
+        byte[] tiles = new byte[size * size];
+        for (int i = 0; i < tiles.length; i++) {
+            tiles[i] = (byte) ((random.nextInt(200) == 0) ? 1 : 0);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(tiles);
+        byte[] field = DistanceField.build(buffer, size, size);
+
+        for (int edit = 0; edit < edits; edit++) {
+            int minX = random.nextInt(size - maxBox);
+            int minY = random.nextInt(size - maxBox);
+            int maxX = minX + random.nextInt(maxBox);
+            int maxY = minY + random.nextInt(maxBox);
+            for (int y = minY; y <= maxY; y++) {
+                for (int x = minX; x <= maxX; x++) {
+                    tiles[y * size + x] = (byte) ((random.nextInt(3) == 0) ? 1 : 0);
+                }
+            }
+            DistanceField.update(buffer, size, size, field, minX, minY, maxX, maxY);
+            assertArrayEquals(DistanceField.build(buffer, size, size), field,
+                    "Update " + edit + " around " + minX + "," + minY);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.perseus.raycaster;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/*
+ * Generated levels must be playable: every tile that isn't a wall can be
+ * reached from the start, the end point included, and a perfect maze has no
+ * loops. Sizes that aren't a multiple of the region size check the narrower
+ * regions along the right and bottom edges too.
+ */
+class LevelGeneratorTest {
+
+    @Test
+    void mazesAreConnectedAndPerfect() {
+        for (int size : new int[] { 3, 100, 600, 1024 }) {
+            LevelGenerator generator = new LevelGenerator(LevelGenerator.Style.MAZE, size, 42, 1);
+            long[] counts = checkConnected(generator, generator.generate(), size);
+            assertEquals(counts[0] - 1, counts[1], "Loops in the " + size + " maze: " + counts[0]
+                    + " open tiles but " + counts[1] + " pairs of open neighbours");
+        }
+    }
+
+    @Test
+    void mazesWithLoopsAreConnected() {
+        LevelGenerator generator = new LevelGenerator(LevelGenerator.Style.MAZE, 600, 42, 0.7);
+        checkConnected(generator, generator.generate(), 600);
+    }
+
+    @Test
+    void cavesAreConnected() {
+        for (double density : new double[] { 0.3, 0.45, 0.6 }) {
+            for (int size : new int[] { 100, 600, 1024 }) {
+                LevelGenerator generator = new LevelGenerator(LevelGenerator.Style.CAVE, size, 42, density);
+                checkConnected(generator, generator.generate(), size);
+            }
+        }
+    }
+
+    // The region by region file holds the same level as the grid generated in one go
+    @Test
+    void writtenLevelMatchesGeneratedGrid(@TempDir Path directory) throws Exception {
+        Path path = directory.resolve("LevelData" + LevelFile.EXTENSION);
+        Files.write(path, new byte[] { 1, 2, 3 }); // Replaced, not appended to
+        LevelGenerator generator = new LevelGenerator(LevelGenerator.Style.CAVE, 600, 7, 0.45);
+        byte[] grid = generator.generate();
+        generator.write(path, Map.TILE_SIZE, 0);
+
+        Level level = LevelFile.load(path, false);
+        Map map = level.getMap();
+        assertEquals(602, map.getWidth());
+        assertEquals(generator.getStartCol() + 1, level.getStartCol());
+        assertEquals(generator.getStartRow() + 1, level.getStartRow());
+        byte[] inside = new byte[grid.length];
+        for (int row = 0; row < 600; row++) {
+            for (int col = 0; col < 600; col++) {
+                inside[row * 600 + col] = (byte) map.getTile(col + 1, row + 1);
+            }
+        }
+        assertArrayEquals(grid, inside);
+        try (var files = Files.list(directory)) {
+            assertEquals(1, files.count(), "The temporary file was left behind");
+        }
+    }
+
+    // Flood fill from the start. Returns the open tiles and the pairs of open neighbours
+    private static long[] checkConnected(LevelGenerator generator, byte[] grid, int size) {
+        int start = generator.getStartRow() * size + generator.getStartCol();
+        assertEquals(2, grid[start], "The start isn't where the generator says");
+        assertEquals(3, grid[generator.getEndRow() * size + generator.getEndCol()],
+                "The end point isn't where the generator says");
+
+        boolean[] reached = new boolean[grid.length];
+        int[] queue = new int[grid.length];
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = start;
+        reached[start] = true;
+        while (head < tail) {
+            int tile = queue[head++];
+            int col = tile % size;
+            int row = tile / size;
+            int[] neighbours = { (col > 0) ? tile - 1 : -1, (col < size - 1) ? tile + 1 : -1,
+                    (row > 0) ? tile - size : -1, (row < size - 1) ? tile + size : -1 };
+            for (int next : neighbours) {
+                if (next >= 0 && grid[next] != 1 && !reached[next]) {
+                    reached[next] = true;
+                    queue[tail++] = next;
+                }
+            }
+        }
+
+        long open = 0;
+        long pairs = 0;
+        for (int tile = 0; tile < grid.length; tile++) {
+            if (grid[tile] == 1) {
+                continue;
+            }
+            assertTrue(reached[tile], "Tile " + (tile % size) + "," + (tile / size) + " of the " + size
+                    + " level can't be reached from the start");
+            open++;
+            if (tile % size < size - 1 && grid[tile + 1] != 1) {
+                pairs++;
+            }
+            if (tile / size < size - 1 && grid[tile + size] != 1) {
+                pairs++;
+            }
+        }
+        return new long[] { open, pairs };
+    }
+}
@@ -0,0 +1,115 @@
+package com.perseus.raycaster;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+import org.junit.jupiter.api.Test;
+
+// Jump point search must find walks exactly as short as a plain search over every tile
+class PathSolverTest {
+
+    @Test
+    void perfectMazes() {
+        for (long seed = 1; seed <= 3; seed++) {
+            check("maze " + seed, TestLevels.generated(LevelGenerator.Style.MAZE, 201, seed, 1));
+        }
+    }
+
+    // Knocking holes in the maze walls gives loops, so there is more than one way to compare
+    @Test
+    void mazesWithLoops() {
+        for (long seed = 1; seed <= 3; seed++) {
+            check("maze with loops " + seed, TestLevels.generated(LevelGenerator.Style.MAZE, 201, seed, 0.7));
+        }
+    }
+
+    @Test
+    void caves() {
+        for (long seed = 1; seed <= 3; seed++) {
+            check("cave " + seed, TestLevels.generated(LevelGenerator.Style.CAVE, 300, seed, 0.45));
+        }
+    }
+
+    @Test
+    void scatteredWalls() {
+        for (long seed = 1; seed <= 3; seed++) {
+            check("scattered walls " + seed, TestLevels.scatteredWalls(300, seed));
+        }
+    }
+
+    @Test
+    void walledInStartHasNoPath() {
+        byte[] tiles = new byte[7 * 7];
+        Arrays.fill(tiles, (byte) 1);
+        tiles[3 * 7 + 3] = 0;
+        tiles[1 * 7 + 1] = 0;
+        tiles[1 * 7 + 2] = 3;
+        assertEquals(-1, PathSolver.shortestDistance(new Level(new Map(tiles, 7, 7), 3, 3, 0)));
+    }
+
+    private static void check(String name, Level level) {
+        double expected = dijkstraDistance(level);
+        assertTrue(expected > 0, name + " has no way to its goal");
+        assertEquals(expected, PathSolver.shortestDistance(level), 1e-6 * Math.abs(expected), name);
+    }
+
+    /*
+     * The same walk PathSolver looks for (8 directions, no squeezing past
+     * corners, ending half a tile past the center of a tile next to a goal),
+     * found by Dijkstra over every tile. Slow but obviously right.
+     */
+    private static double dijkstraDistance(Level level) {
+        Map map = level.getMap();
+        int width = map.getWidth();
+        double[] best = new double[width * map.getHeight()];
+        Arrays.fill(best, Double.MAX_VALUE);
+        PriorityQueue<double[]> open = new PriorityQueue<>(Comparator.comparingDouble((double[] entry) -> entry[0]));
+        if (!walkable(map, level.getStartCol(), level.getStartRow())) {
+            return -1;
+        }
+        int start = level.getStartRow() * width + level.getStartCol();
+        best[start] = 0;
+        open.add(new double[] { 0, start });
+
+        while (!open.isEmpty()) {
+            double[] entry = open.poll();
+            int tile = (int) entry[1];
+            if (entry[0] > best[tile]) {
+                continue; // Reached before by a cheaper route
+            }
+            int col = tile % width;
+            int row = tile / width;
+            if (map.getTile(col - 1, row) == 3 || map.getTile(col + 1, row) == 3 || map.getTile(col, row - 1) == 3
+                    || map.getTile(col, row + 1) == 3) {
+                return (entry[0] + 0.5) * map.getTileSize();
+            }
+            for (int dy = -1; dy <= 1; dy++) {
+                for (int dx = -1; dx <= 1; dx++) {
+                    if ((dx == 0 && dy == 0) || !walkable(map, col + dx, row + dy)) {
+                        continue;
+                    }
+                    boolean diagonal = dx != 0 && dy != 0;
+                    if (diagonal && (!walkable(map, col + dx, row) || !walkable(map, col, row + dy))) {
+                        continue;
+                    }
+                    int next = tile + dy * width + dx;
+                    double cost = entry[0] + (diagonal ? Math.sqrt(2) : 1);
+                    if (cost < best[next]) {
+                        best[next] = cost;
+                        open.add(new double[] { cost, next });
+                    }
+                }
+            }
+        }
+        return -1;
+    }
+
+    // Open tiles are even, getTile gives -1 outside the map
+    private static boolean walkable(Map map, int col, int row) {
+        return (map.getTile(col, row) & 1) == 0;
+    }
+}
@@ -0,0 +1,61 @@
+package com.perseus.raycaster;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+// Skipping across open space with the distance field must see exactly what walking every tile boundary sees
+class RayTest {
+    private static final int RAYS = 360;
+
+    @Test
+    void skippingMatchesPlainTraversalInTheBundledLevel() throws Exception {
+        Map map = TestLevels.bundledLevel().getMap();
+        for (Ray.CastMode mode : Ray.CastMode.values()) {
+            for (int row = 0; row < map.getHeight(); row++) {
+                for (int col = 0; col < map.getWidth(); col++) {
+                    if (map.getTile(col, row) == 0) {
+                        checkFrom(map, col, row, mode);
+                    }
+                }
+            }
+        }
+    }
+
+    // Caves have the wide open areas where skipping takes the longest jumps
+    @Test
+    void skippingMatchesPlainTraversalInCaves() {
+        Map map = TestLevels.generated(LevelGenerator.Style.CAVE, 600, 3, 0.3).getMap();
+        Random random = new Random(5);
+        int checked = 0;
+        while (checked < 300) {
+            int col = random.nextInt(map.getWidth());
+            int row = random.nextInt(map.getHeight());
+            if (map.getTile(col, row) == 0) {
+                checkFrom(map, col, row, Ray.CastMode.DDA);
+                checked++;
+            }
+        }
+    }
+
+    private static void checkFrom(Map map, int col, int row, Ray.CastMode mode) {
+        int tileSize = map.getTileSize();
+        Player player = new Player((col + 0.5) * tileSize, (row + 0.5) * tileSize, 0);
+        Ray skipping = new Ray(1, 0);
+        Ray plain = new Ray(1, 0);
+        plain.setSkipEmptySpace(false);
+        for (int i = 0; i < RAYS; i++) {
+            double angle = Math.toRadians(i + 0.5);
+            skipping.setDirection(Math.cos(angle), Math.sin(angle));
+            plain.setDirection(Math.cos(angle), Math.sin(angle));
+            skipping.cast(map, player, mode);
+            plain.cast(map, player, mode);
+            String ray = mode + " ray " + i + " from tile " + col + "," + row;
+            assertEquals(plain.getHitTileX(), skipping.getHitTileX(), ray);
+            assertEquals(plain.getHitTileY(), skipping.getHitTileY(), ray);
+            assertEquals(plain.getDistance(), skipping.getDistance(), 1e-6 * plain.getDistance(), ray);
+        }
+    }
+}
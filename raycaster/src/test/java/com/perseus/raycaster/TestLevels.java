@@ -0,0 +1,48 @@
+package com.perseus.raycaster;
+
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+/*
+ * Levels shared by the tests: the one that ships with the game, generated
+ * mazes and caves, and open maps with scattered walls. Everything is read
+ * from the classpath or generated from a seed, so the tests need no files.
+ */
+class TestLevels {
+
+    // The level that ships with the game
+    static Level bundledLevel() throws Exception {
+        try (InputStream in = TestLevels.class.getResourceAsStream("/com/perseus/raycaster/LevelData.xml")) {
+            return LevelLoader.load(in);
+        }
+    }
+
+    // A generated level with the ring of outer walls a loaded level has
+    static Level generated(LevelGenerator.Style style, int size, long seed, double density) {
+        LevelGenerator generator = new LevelGenerator(style, size, seed, density);
+        return padded(generator.generate(), size, generator.getStartCol(), generator.getStartRow());
+    }
+
+    // A size x size map with one tile in six a wall, the start in the middle and the goal in a corner
+    static Level scatteredWalls(int size, long seed) {
+        Random random = new Random(seed);
+        byte[] grid = new byte[size * size];
+        for (int i = 0; i < grid.length; i++) {
+            grid[i] = (byte) ((random.nextInt(6) == 0) ? 1 : 0);
+        }
+        grid[(size / 2) * size + size / 2] = 2;
+        grid[size * size - 1] = 3;
+        return padded(grid, size, size / 2, size / 2);
+    }
+
+    private static Level padded(byte[] grid, int size, int startCol, int startRow) {
+        int width = size + 2;
+        byte[] tiles = new byte[width * width];
+        Arrays.fill(tiles, (byte) 1);
+        for (int row = 0; row < size; row++) {
+            System.arraycopy(grid, row * size, tiles, (row + 1) * width + 1, size);
+        }
+        return new Level(new Map(tiles, width, width), startCol + 1, startRow + 1, 0);
+    }
+}